@@ -80,6 +80,18 @@ public class CallbackKueImpl implements CallbackKue {
         return this;
     }
 
+    @Override
+    public CallbackKue getJobs(List<Long> ids, Handler<AsyncResult<List<Job>>> handler) {
+        jobService.getJobs(ids, handler);
+        return this;
+    }
+
+    @Override
+    public CallbackKue saveAll(List<Job> jobs, Handler<AsyncResult<List<Long>>> handler) {
+        jobService.saveAll(jobs, handler);
+        return this;
+    }
+
     @Override
     public CallbackKue removeJob(long id, Handler<AsyncResult<Void>> handler) {
         jobService.removeJob(id, handler);
@@ -175,4 +187,22 @@ public class CallbackKueImpl implements CallbackKue {
         jobService.getWorkTime(handler);
         return this;
     }
+
+    @Override
+    public CallbackKue getStats(Handler<AsyncResult<JsonObject>> handler) {
+        kue.getStats().onComplete(handler);
+        return this;
+    }
+
+    @Override
+    public CallbackKue jobPage(String type, String state, String cursor, int count, String order, Handler<AsyncResult<JsonObject>> handler) {
+        jobService.jobPage(type, state, cursor, count, order, handler);
+        return this;
+    }
+
+    @Override
+    public CallbackKue getStatsByType(Handler<AsyncResult<JsonObject>> handler) {
+        kue.getStatsByType().onComplete(handler);
+        return this;
+    }
 }
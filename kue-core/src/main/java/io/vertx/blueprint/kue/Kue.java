@@ -1,23 +1,40 @@
 package io.vertx.blueprint.kue;
 
+import io.vertx.blueprint.kue.queue.AdaptiveConcurrency;
 import io.vertx.blueprint.kue.queue.Job;
+import io.vertx.blueprint.kue.queue.JobDispatcher;
+import io.vertx.blueprint.kue.queue.JobIdAllocator;
+import io.vertx.blueprint.kue.queue.JobLeases;
+import io.vertx.blueprint.kue.queue.JobPromoter;
 import io.vertx.blueprint.kue.queue.JobState;
 import io.vertx.blueprint.kue.queue.KueWorker;
+import io.vertx.blueprint.kue.queue.RecurringJob;
+import io.vertx.blueprint.kue.queue.RecurringScheduler;
+import io.vertx.blueprint.kue.queue.WeightedScheduler;
+import io.vertx.blueprint.kue.queue.WorkStats;
 import io.vertx.blueprint.kue.service.JobService;
+import io.vertx.blueprint.kue.util.LuaScript;
 import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.blueprint.kue.util.VirtualThreads;
 import io.vertx.core.*;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.shareddata.Lock;
 import io.vertx.redis.client.Redis;
 import io.vertx.redis.client.RedisAPI;
-import io.vertx.redis.client.ResponseType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static io.vertx.blueprint.kue.queue.KueVerticle.EB_JOB_SERVICE_ADDRESS;
 
@@ -30,11 +47,31 @@ public class Kue {
 
     private static final Logger logger = LoggerFactory.getLogger(Kue.class);
 
+    private static final String PROMOTER_LOCK = "vertx.kue.promoter";
+
+    private static final LuaScript LIMIT_SCRIPT = LuaScript.load("limit");
+
     private final JsonObject config;
     private final Vertx vertx;
     private final JobService jobService;
     private final Redis client;
     private final RedisAPI redisAPI;
+    private final JobIdAllocator idAllocator;
+    private final JobDispatcher dispatcher;
+    private final JobLeases leases;
+    private final JobPromoter promoter;
+    private final RecurringScheduler recurring;
+    private final WorkStats workStats;
+    // completion callbacks of the jobs in flight in the local workers, by address id
+    private final Map<String, Handler<AsyncResult<JsonObject>>> doneHandlers = new ConcurrentHashMap<>();
+    private ExecutorService virtualExecutor; // created on the first processVirtual call
+    private final AtomicBoolean timersStarted = new AtomicBoolean(false);
+    private final List<Long> timers = new ArrayList<>();
+    private Lock promoterLock; // held while this instance is the cluster-wide promoter
+    private Future<JsonObject> stats; // cached queue statistics, see getStats
+    private long statsAt;
+    private Future<JsonObject> statsByType; // cached per-type statistics, see getStatsByType
+    private long statsByTypeAt;
     private boolean closed = false;
 
     public Kue(Vertx vertx, JsonObject config) {
@@ -43,6 +80,12 @@ public class Kue {
         this.jobService = JobService.createProxy(vertx, EB_JOB_SERVICE_ADDRESS);
         this.client = RedisHelper.client(vertx, config);
         this.redisAPI = RedisAPI.api(client);
+        this.idAllocator = new JobIdAllocator(config);
+        this.dispatcher = new JobDispatcher(this, config);
+        this.leases = new JobLeases(this, config);
+        this.promoter = new JobPromoter(this, config);
+        this.recurring = new RecurringScheduler(this, config);
+        this.workStats = new WorkStats(this, config);
         client.connect(it -> {
             if (it.failed()) {
                 it.cause().printStackTrace();
@@ -53,18 +96,23 @@ public class Kue {
 
     public Kue(Vertx vertx, JsonObject config, Redis redisClient) {
         this.vertx = vertx;
-        this.checkJobPromotion();
-        this.checkActiveJobTtl();
         this.config = config;
         this.jobService = JobService.createProxy(vertx, EB_JOB_SERVICE_ADDRESS);
         this.client = redisClient;
         this.redisAPI = RedisAPI.api(client);
+        this.idAllocator = new JobIdAllocator(config);
+        this.dispatcher = new JobDispatcher(this, config);
+        this.leases = new JobLeases(this, config);
+        this.promoter = new JobPromoter(this, config);
+        this.recurring = new RecurringScheduler(this, config);
+        this.workStats = new WorkStats(this, config);
         client.connect(it -> {
             if (it.failed()) {
                 it.cause().printStackTrace();
             }
         });
         Job.setKue(this, redisAPI, config); // init static kue instance inner job
+        this.setupTimers();
     }
 
     /**
@@ -74,7 +122,17 @@ public class Kue {
      * @return corresponding address
      */
     public static String getCertainJobAddress(String handlerType, Job job) {
-        return "vertx.kue.handler.job." + handlerType + "." + job.getAddress_id() + "." + job.getType();
+        return getCertainJobAddress(handlerType, job.getAddress_id(), job.getType());
+    }
+
+    /**
+     * Generate handler address with certain job on event bus.
+     * <p>Format: vertx.kue.handler.job.{handlerType}.{addressId}.{jobType}</p>
+     *
+     * @return corresponding address
+     */
+    public static String getCertainJobAddress(String handlerType, String addressId, String type) {
+        return "vertx.kue.handler.job." + handlerType + "." + addressId + "." + type;
     }
 
     /**
@@ -127,24 +185,152 @@ public class Kue {
         return new Job(type, data);
     }
 
-    private void processInternal(String type, Handler<Job> handler, boolean isWorker) {
-        logger.debug(String.format("Deploying KueWorker. Job type: %s - Worker: %s", type, isWorker));
-        KueWorker worker = new KueWorker(type, handler, this);
+    private void processInternal(String type, int n, Handler<Job> handler, boolean blocking) {
+        // a worker keeps several jobs in flight and runs non-blocking handlers on its own event loop,
+        // so the n slots are split over up to `job.worker.instances` workers (the default event loop
+        // pool size); blocking handlers are offloaded to the worker pool, one worker is enough
+        int instances = blocking ? 1 : Math.max(1, Math.min(n,
+                config.getInteger("job.worker.instances", VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE)));
+        logger.debug(String.format("Deploying KueWorker. Job type: %s - Concurrency: %d - Blocking: %s - Instances: %d",
+                type, n, blocking, instances));
+        for (int i = 0; i < instances; i++) {
+            int slots = n / instances + (i < n % instances ? 1 : 0);
+            deployWorker(new KueWorker(type, slots, blocking, handler, this), type, slots);
+        }
+    }
+
+    private void deployWorker(KueWorker worker, String type, int n) {
         DeploymentOptions options = new DeploymentOptions();
-        options.setWorker(isWorker);
         options.setConfig(config);
         vertx.deployVerticle(worker, options, r0 -> {
             if (r0.succeeded()) {
-                logger.debug(String.format("Deployed new KueWorker. Job type: %s - Worker: %s", type, isWorker));
-                this.on("job_complete", msg -> {
-                    long dur = new Job(((JsonObject) msg.body()).getJsonObject("job")).getDuration();
-                    redisAPI.incrby(RedisHelper.getKey("stats:work-time"), Long.toString(dur), r1 -> {
-                        if (r1.failed())
-                            r1.cause().printStackTrace();
-                    });
-                });
+                // work statistics are recorded by the worker itself, see WorkStats
+                logger.debug(String.format("Deployed new KueWorker. Job type: %s - Concurrency: %d", type, n));
+            } else {
+                r0.cause().printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Register the completion callback of a job being processed by a local worker.
+     *
+     * @param addressId job address id
+     * @param handler   completion callback
+     */
+    public void registerDoneHandler(String addressId, Handler<AsyncResult<JsonObject>> handler) {
+        doneHandlers.put(addressId, handler);
+    }
+
+    /**
+     * Unregister the completion callback of a job, once it has been handled.
+     *
+     * @param addressId job address id
+     */
+    public void unregisterDoneHandler(String addressId) {
+        doneHandlers.remove(addressId);
+    }
+
+    /**
+     * Get the completion callback of a job being processed by a local worker.
+     *
+     * @param addressId job address id
+     * @return the callback, or null if no local worker is processing the job
+     */
+    public Handler<AsyncResult<JsonObject>> getDoneHandler(String addressId) {
+        return doneHandlers.get(addressId);
+    }
+
+    /**
+     * Schedule a recurring job. Its runs are enqueued as delayed jobs ahead of time; nodes
+     * scheduling a recurring job with the same name share its runs.
+     *
+     * @param job recurring job definition
+     */
+    public Kue schedule(RecurringJob job) {
+        recurring.schedule(job);
+        setupTimers();
+        return this;
+    }
+
+    /**
+     * Stop scheduling a recurring job on this instance.
+     *
+     * @param name recurring job name
+     */
+    public Kue unschedule(String name) {
+        recurring.cancel(name);
+        return this;
+    }
+
+    /**
+     * Limit the rate at which jobs of a type are taken by the workers of all instances.
+     * <p>The limit is a token bucket stored in Redis and checked by the claim script, so jobs
+     * over the limit stay INACTIVE instead of occupying worker slots.</p>
+     *
+     * @param type      job type
+     * @param perSecond number of jobs allowed per second
+     * @param burst     max number of jobs allowed at once after an idle period
+     */
+    public Future<Void> rateLimit(String type, double perSecond, int burst) {
+        if (perSecond <= 0 || burst <= 0) {
+            return Future.failedFuture(new IllegalArgumentException("The rate limit must be positive"));
+        }
+        Promise<Void> future = Promise.promise();
+        redisAPI.hset(Arrays.asList(RedisHelper.getKey("ratelimit:" + type),
+                "rate", String.valueOf(perSecond), "burst", String.valueOf(burst)), r -> {
+            if (r.succeeded()) {
+                future.complete();
+            } else {
+                future.fail(r.cause());
             }
         });
+        return future.future();
+    }
+
+    /**
+     * Limit the number of jobs of a type that are active at the same time across all instances,
+     * in total and per concurrency key (see {@link Job#setConcurrencyKey}).
+     * <p>The limits are checked by the claim script against the active jobs in Redis, and a slot
+     * is freed when its job completes, fails or its lease expires. Jobs parked behind a busy
+     * concurrency key are made claimable again when the limits change.</p>
+     *
+     * @param type      job type
+     * @param max       max number of active jobs of the type, 0 for no limit
+     * @param maxPerKey max number of active jobs of the type with the same concurrency key, 0 for no limit
+     */
+    public Future<Void> limitConcurrency(String type, int max, int maxPerKey) {
+        if (max < 0 || maxPerKey < 0) {
+            return Future.failedFuture(new IllegalArgumentException("The concurrency limit cannot be negative"));
+        }
+        List<String> keys = Arrays.asList(
+                RedisHelper.getKey("concurrency:" + type),
+                JobDispatcher.parkedKey(type),
+                RedisHelper.getKey("jobs:" + type + ":" + JobState.INACTIVE.name()),
+                RedisHelper.getKey(type + ":jobs"));
+        List<String> args = Arrays.asList(
+                String.valueOf(max),
+                String.valueOf(maxPerKey),
+                RedisHelper.getKey(""),
+                type);
+        return LIMIT_SCRIPT.eval(client, keys, args).mapEmpty();
+    }
+
+    /**
+     * Remove the rate limit of a job type.
+     *
+     * @param type job type
+     */
+    public Future<Void> removeRateLimit(String type) {
+        Promise<Void> future = Promise.promise();
+        redisAPI.del(Collections.singletonList(RedisHelper.getKey("ratelimit:" + type)), r -> {
+            if (r.succeeded()) {
+                future.complete();
+            } else {
+                future.fail(r.cause());
+            }
+        });
+        return future.future();
     }
 
     /**
@@ -160,18 +346,18 @@ public class Kue {
 
     /**
      * Process a job in asynchronous way.
+     * The n slots are spread over up to `job.worker.instances` workers, each running its
+     * handlers on its own event loop.
      *
      * @param type    job type
-     * @param n       job process times
+     * @param n       max number of jobs processed at the same time
      * @param handler job process handler
      */
     public Kue process(String type, int n, Handler<Job> handler) {
         if (n <= 0) {
             throw new IllegalStateException("The process times must be positive");
         }
-        while (n-- > 0) {
-            processInternal(type, handler, false);
-        }
+        processInternal(type, n, handler, false);
         setupTimers();
         return this;
     }
@@ -183,7 +369,7 @@ public class Kue {
      * @param handler job process handler
      */
     public Kue process(String type, Handler<Job> handler) {
-        processInternal(type, handler, false);
+        processInternal(type, 1, handler, false);
         setupTimers();
         return this;
     }
@@ -192,20 +378,123 @@ public class Kue {
      * Process a job that may be blocking.
      *
      * @param type    job type
-     * @param n       job process times
+     * @param n       max number of jobs processed at the same time
      * @param handler job process handler
      */
     public Kue processBlocking(String type, int n, Handler<Job> handler) {
         if (n <= 0) {
             throw new IllegalStateException("The process times must be positive");
         }
-        while (n-- > 0) {
-            processInternal(type, handler, true);
+        processInternal(type, n, handler, true);
+        setupTimers();
+        return this;
+    }
+
+    /**
+     * Process jobs of several types in asynchronous way with one shared pool of n slots.
+     * Slots are given to the types by deficit round robin following their weights, so under
+     * contention each type gets a share proportional to its weight while the capacity of idle
+     * types goes to the others.
+     *
+     * @param weights job types with their weight
+     * @param n       max number of jobs processed at the same time
+     * @param handler job process handler, for jobs of all the given types
+     */
+    public Kue processWeighted(Map<String, Integer> weights, int n, Handler<Job> handler) {
+        return processWeightedInternal(weights, n, handler, false);
+    }
+
+    /**
+     * Process jobs of several types that may be blocking with one shared pool of n slots.
+     *
+     * @param weights job types with their weight
+     * @param n       max number of jobs processed at the same time
+     * @param handler job process handler, for jobs of all the given types
+     * @see #processWeighted(Map, int, Handler)
+     */
+    public Kue processBlockingWeighted(Map<String, Integer> weights, int n, Handler<Job> handler) {
+        return processWeightedInternal(weights, n, handler, true);
+    }
+
+    private Kue processWeightedInternal(Map<String, Integer> weights, int n, Handler<Job> handler, boolean blocking) {
+        if (n <= 0) {
+            throw new IllegalStateException("The process times must be positive");
         }
+        WeightedScheduler scheduler = new WeightedScheduler(this, weights, config);
+        logger.debug(String.format("Deploying KueWorker. Job types: %s - Concurrency: %d - Blocking: %s", weights, n, blocking));
+        deployWorker(new KueWorker(scheduler, n, blocking, handler, this), String.join(",", weights.keySet()), n);
         setupTimers();
         return this;
     }
 
+    /**
+     * Process a job in asynchronous way, letting the number of jobs processed at the same time
+     * adapt between min and max to the handler latency, the error rate and the backlog of the type.
+     * See {@link AdaptiveConcurrency} for the tuning options.
+     *
+     * @param type    job type
+     * @param min     min number of jobs processed at the same time
+     * @param max     max number of jobs processed at the same time
+     * @param handler job process handler
+     */
+    public Kue processAdaptive(String type, int min, int max, Handler<Job> handler) {
+        return processAdaptiveInternal(type, min, max, handler, false);
+    }
+
+    /**
+     * Process a job that may be blocking, letting the number of jobs processed at the same time
+     * adapt between min and max.
+     *
+     * @param type    job type
+     * @param min     min number of jobs processed at the same time
+     * @param max     max number of jobs processed at the same time
+     * @param handler job process handler
+     * @see #processAdaptive(String, int, int, Handler)
+     */
+    public Kue processBlockingAdaptive(String type, int min, int max, Handler<Job> handler) {
+        return processAdaptiveInternal(type, min, max, handler, true);
+    }
+
+    private Kue processAdaptiveInternal(String type, int min, int max, Handler<Job> handler, boolean blocking) {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(min, max, config);
+        logger.debug(String.format("Deploying KueWorker. Job type: %s - Concurrency: %d..%d - Blocking: %s", type, min, max, blocking));
+        deployWorker(new KueWorker(type, adaptive, blocking, handler, this), type, max);
+        setupTimers();
+        return this;
+    }
+
+    /**
+     * Process a job that may be blocking, running each handler invocation on its own virtual thread.
+     * Up to n handlers run at the same time without taking Vert.x worker pool threads, which suits
+     * I/O-bound jobs with a high concurrency. Falls back to {@link #processBlocking(String, int, Handler)}
+     * if the running JVM does not support virtual threads.
+     *
+     * @param type    job type
+     * @param n       max number of jobs processed at the same time
+     * @param handler job process handler
+     */
+    public Kue processVirtual(String type, int n, Handler<Job> handler) {
+        if (n <= 0) {
+            throw new IllegalStateException("The process times must be positive");
+        }
+        ExecutorService executor = getVirtualExecutor();
+        if (executor == null) {
+            logger.warn("Virtual threads are not supported, processing blocking jobs on the worker pool. Job type: " + type);
+            return processBlocking(type, n, handler);
+        }
+        logger.debug(String.format("Deploying KueWorker. Job type: %s - Concurrency: %d - Virtual threads", type, n));
+        deployWorker(new KueWorker(type, n, executor, handler, this), type, n);
+        setupTimers();
+        return this;
+    }
+
+    private synchronized ExecutorService getVirtualExecutor() {
+        if (virtualExecutor == null) {
+            virtualExecutor = VirtualThreads.newExecutor();
+        }
+        return virtualExecutor;
+    }
+
     /**
      * Process a job that may be blocking (once).
      *
@@ -213,7 +502,7 @@ public class Kue {
      * @param handler job process handler
      */
     public Kue processBlocking(String type, Handler<Job> handler) {
-        processInternal(type, handler, true);
+        processInternal(type, 1, handler, true);
         setupTimers();
         return this;
     }
@@ -238,6 +527,29 @@ public class Kue {
         return promise.future();
     }
 
+    /**
+     * Get several jobs from backend by id in one round trip.
+     *
+     * @param ids job ids
+     * @return async result list; missing jobs are omitted
+     */
+    public Future<List<Job>> getJobs(List<Long> ids) {
+        Promise<List<Job>> future = Promise.promise();
+        jobService.getJobs(ids, future);
+        return future.future();
+    }
+
+    /**
+     * Save many new jobs at once. Ids are allocated with a single INCRBY and all jobs
+     * are written in one pipelined batch, instead of chaining {@link Job#save()} calls.
+     *
+     * @param jobs new jobs to save
+     * @return async result of the assigned ids, in the order of the given jobs
+     */
+    public Future<List<Long>> saveAll(List<Job> jobs) {
+        return Job.saveAll(jobs);
+    }
+
     /**
      * Remove a job by id.
      *
@@ -365,6 +677,7 @@ public class Kue {
 
     /**
      * Get cardinality of inactive jobs.
+     * <p>Jobs parked behind a busy concurrency key are counted too.</p>
      *
      * @param type job type; if null, then return global metrics.
      */
@@ -431,95 +744,187 @@ public class Kue {
     }
 
     /**
-     * Set up timers for checking job promotion and active job ttl.
+     * Get a page of jobs after a cursor (keyset pagination), see {@link JobService#jobPage}.
+     *
+     * @param type   job type; if null, jobs of all types
+     * @param state  job state; if null, jobs in all states (then `type` must be null too)
+     * @param cursor `next` cursor of the previous page, or null for the first page
+     * @param count  page size
+     * @param order  page order (asc, desc)
+     * @return async result of `jobs` and the `next` cursor (null after the last page)
+     */
+    public Future<JsonObject> jobPage(String type, String state, String cursor, int count, String order) {
+        Promise<JsonObject> future = Promise.promise();
+        jobService.jobPage(type, state, cursor, count, order, future);
+        return future.future();
+    }
+
+    /**
+     * Get queue statistics: the work time and the number of jobs in each state.
+     * <p>The counts are read with pipelined ZCARD calls. The result is cached for `job.stats.ttl`
+     * ms (1000 by default), so many dashboards polling at once share the same snapshot.</p>
+     *
+     * @return async result
+     */
+    public synchronized Future<JsonObject> getStats() {
+        long now = System.currentTimeMillis();
+        if (stats == null || now - statsAt >= config.getLong("job.stats.ttl", 1000L)) {
+            Promise<JsonObject> future = Promise.promise();
+            jobService.getStats(future);
+            Future<JsonObject> snapshot = future.future();
+            stats = snapshot;
+            statsAt = now;
+            snapshot.onFailure(ex -> {
+                synchronized (this) {
+                    if (stats == snapshot) { // do not cache failures
+                        stats = null;
+                    }
+                }
+            });
+        }
+        return stats;
+    }
+
+    /**
+     * Get the number of jobs of every type in every state, e.g.
+     * <code>{"email": {"inactive": 3, "active": 1, ...}, ...}</code>.
+     * <p>All counts are read in one pipelined batch and cached for `job.stats.type.ttl` ms
+     * (`job.stats.ttl` by default).</p>
+     *
+     * @return async result
+     */
+    public synchronized Future<JsonObject> getStatsByType() {
+        long now = System.currentTimeMillis();
+        long ttl = config.getLong("job.stats.type.ttl", config.getLong("job.stats.ttl", 1000L));
+        if (statsByType == null || now - statsByTypeAt >= ttl) {
+            Promise<JsonObject> future = Promise.promise();
+            jobService.getStatsByType(future);
+            Future<JsonObject> snapshot = future.future();
+            statsByType = snapshot;
+            statsByTypeAt = now;
+            snapshot.onFailure(ex -> {
+                synchronized (this) {
+                    if (statsByType == snapshot) {
+                        statsByType = null;
+                    }
+                }
+            });
+        }
+        return statsByType;
+    }
+
+    /**
+     * Set up timers for checking job promotion and active job ttl, once per Kue instance.
+     * <p>With `job.promotion.cluster` enabled, the timers only run on the instance holding the
+     * promoter lock of the (clustered) Vert.x shared data, so Redis is polled once per interval
+     * for the whole deployment. The other instances stand by and take over the lock when the
+     * promoter leaves the cluster.</p>
      */
     private void setupTimers() {
+        if (!timersStarted.compareAndSet(false, true)) {
+            return;
+        }
+        if (config.getBoolean("job.promotion.cluster", false)) {
+            this.electPromoter();
+        } else {
+            this.startTimers();
+        }
+    }
+
+    private void startTimers() {
         this.checkJobPromotion();
         this.checkActiveJobTtl();
     }
 
     /**
-     * Check job promotion.
-     * Promote delayed jobs, checking every `ms`.
-     */
-    private void checkJobPromotion() { // TODO: TO REVIEW
-        int timeout = config.getInteger("job.promotion.interval", 1000);
-        int limit = config.getInteger("job.promotion.limit", 1000);
-        // need a mechanism to stop the circuit timer
-        vertx.setPeriodic(timeout, l -> {
-            logger.trace("Checking for delayed jobs");
-            List<String> zrangebyscoreArgs = new ArrayList<>();
-            zrangebyscoreArgs.add(RedisHelper.getKey("jobs:DELAYED"));
-            zrangebyscoreArgs.add(String.valueOf(0));
-            zrangebyscoreArgs.add(String.valueOf(System.currentTimeMillis()));
-            zrangebyscoreArgs.add("LIMIT");
-            zrangebyscoreArgs.add("0");
-            zrangebyscoreArgs.add(Integer.toString(limit));
-            redisAPI.zrangebyscore(zrangebyscoreArgs, r -> {
-                if (r.succeeded()) {
-                    JsonArray result = new JsonArray();
-                    r.result().forEach(it -> {
-                        if (it.type() == ResponseType.MULTI) {
-                            JsonArray innerArray = new JsonArray();
-                            it.forEach(it2 -> {
-                                innerArray.add(it2.toString());
-                            });
-                            result.add(innerArray);
-                        } else {
-                            result.add(it.toString());
-                        }
-                    });
-                    result.forEach(r1 -> {
-                        long id = Long.parseLong(RedisHelper.stripFIFO((String) r1));
-                        logger.info("Found delayed job: " + id);
-
-                        this.getJob(id).compose(jr -> jr.get().inactive())
-                                .onComplete(jr -> {
-                                    if (jr.succeeded()) {
-                                        jr.result().emit("promotion", jr.result().getId());
-                                    } else {
-                                        jr.cause().printStackTrace();
-                                    }
-                                });
-                    });
-                } else {
-                    r.cause().printStackTrace();
+     * Try to become the cluster-wide promoter, retrying every `job.promotion.interval` ms.
+     */
+    private void electPromoter() {
+        if (closed) {
+            return;
+        }
+        long timeout = config.getLong("job.promotion.election.timeout", 1000L);
+        vertx.sharedData().getLockWithTimeout(PROMOTER_LOCK, timeout, r -> {
+            if (r.succeeded()) {
+                synchronized (this) {
+                    if (closed) {
+                        r.result().release();
+                        return;
+                    }
+                    promoterLock = r.result();
                 }
-            });
+                logger.info("Elected as job promoter");
+                this.startTimers();
+            } else {
+                vertx.setTimer(config.getInteger("job.promotion.interval", 1000), l -> electPromoter());
+            }
         });
     }
 
+    /**
+     * Check job promotion.
+     * Promote due delayed jobs, see {@link JobPromoter}.
+     */
+    private void checkJobPromotion() {
+        promoter.start();
+    }
+
     /**
      * Check active job ttl.
+     * Recover active jobs whose lease expired, checking every `job.ttl.interval` ms.
      */
-    private void checkActiveJobTtl() {  // TODO
+    private void checkActiveJobTtl() {
         int timeout = config.getInteger("job.ttl.interval", 1000);
-        int limit = config.getInteger("job.ttl.limit", 1000);
-        // need a mechanism to stop the circuit timer
-        vertx.setPeriodic(timeout, l -> {
-            List<String> zrangebyscoreArgs = new ArrayList<>();
-            zrangebyscoreArgs.add(RedisHelper.getKey("jobs:ACTIVE"));
-            zrangebyscoreArgs.add(String.valueOf(100000));
-            zrangebyscoreArgs.add(String.valueOf(System.currentTimeMillis()));
-            zrangebyscoreArgs.add("LIMIT");
-            zrangebyscoreArgs.add("0");
-            zrangebyscoreArgs.add(Integer.toString(limit));
-            redisAPI.zrangebyscore(zrangebyscoreArgs, r -> {
+        addTimer(vertx.setPeriodic(timeout, l -> {
+            logger.trace("Checking for expired job leases");
+            leases.reap().onComplete(r -> {
                 if (r.failed()) {
                     r.cause().printStackTrace();
                 }
             });
-        });
+        }));
+    }
+
+    private synchronized void addTimer(long timer) {
+        if (closed) {
+            vertx.cancelTimer(timer);
+        } else {
+            timers.add(timer);
+        }
     }
 
     public void setClosed(boolean closed) {
         this.closed = closed;
+        if (closed) {
+            synchronized (this) {
+                if (virtualExecutor != null) {
+                    virtualExecutor.shutdown();
+                    virtualExecutor = null;
+                }
+                timers.forEach(vertx::cancelTimer);
+                timers.clear();
+                promoter.stop();
+                recurring.stop();
+                if (promoterLock != null) {
+                    promoterLock.release();
+                    promoterLock = null;
+                }
+            }
+        }
     }
 
     public boolean isClosed() {
         return closed;
     }
 
+    /**
+     * Whether this instance holds the cluster-wide promoter lock.
+     * <em>Notice: only available in package scope</em>
+     */
+    synchronized boolean isPromoter() {
+        return promoterLock != null;
+    }
+
     public Vertx getVertx() {
         return vertx;
     }
@@ -531,4 +936,24 @@ public class Kue {
     public RedisAPI getRedisAPI() {
         return redisAPI;
     }
+
+    public JobIdAllocator getIdAllocator() {
+        return idAllocator;
+    }
+
+    public JobDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    public JobLeases getLeases() {
+        return leases;
+    }
+
+    public WorkStats getWorkStats() {
+        return workStats;
+    }
+
+    public JobPromoter getPromoter() {
+        return promoter;
+    }
 }
@@ -0,0 +1,111 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * AIMD controller for the number of jobs a {@link KueWorker} keeps in flight.
+ * <p>The worker records the latency and outcome of every finished job. Every
+ * `job.concurrency.interval` milliseconds the limit is adjusted from that window and the
+ * current backlog (inactive jobs of the type):</p>
+ * <ul>
+ * <li>if the error rate exceeds `job.concurrency.error.threshold` or the average latency
+ * exceeds the baseline latency by `job.concurrency.latency.tolerance`, the limit is
+ * multiplied by `job.concurrency.backoff`;</li>
+ * <li>otherwise, if jobs are waiting and all slots were in use, the limit grows by one;</li>
+ * <li>otherwise, if nothing is waiting and slots stayed unused, the limit shrinks by one.</li>
+ * </ul>
+ * <p>The limit always stays within the given min and max bounds.</p>
+ */
+public class AdaptiveConcurrency {
+
+    private final int min;
+    private final int max;
+    private final long interval;
+    private final double backoff;
+    private final double tolerance;
+    private final double errorThreshold;
+
+    private int limit;
+    private double baseline = -1; // lowest average latency seen, drifting slowly upwards
+
+    // current window
+    private long finished = 0;
+    private long errors = 0;
+    private long latency = 0;
+    private int peakInFlight = 0;
+
+    public AdaptiveConcurrency(int min, int max, JsonObject config) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("Invalid concurrency bounds: " + min + ".." + max);
+        }
+        this.min = min;
+        this.max = max;
+        this.interval = config.getLong("job.concurrency.interval", 1000L);
+        this.backoff = config.getDouble("job.concurrency.backoff", 0.75);
+        this.tolerance = config.getDouble("job.concurrency.latency.tolerance", 2.0);
+        this.errorThreshold = config.getDouble("job.concurrency.error.threshold", 0.1);
+        this.limit = min;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Record a finished job.
+     *
+     * @param millis handler latency
+     * @param failed whether the job failed
+     */
+    public void record(long millis, boolean failed) {
+        finished++;
+        latency += millis;
+        if (failed) {
+            errors++;
+        }
+    }
+
+    /**
+     * Record the number of jobs currently in flight.
+     */
+    public void inFlight(int n) {
+        peakInFlight = Math.max(peakInFlight, n);
+    }
+
+    /**
+     * Close the current window and compute the new limit.
+     *
+     * @param backlog  number of jobs waiting to be processed
+     * @param inFlight number of jobs in flight now, which may have started in an earlier window
+     * @return the new limit
+     */
+    public int adjust(long backlog, int inFlight) {
+        int peak = Math.max(peakInFlight, inFlight);
+        boolean overloaded = false;
+        if (finished > 0) {
+            double avg = (double) latency / finished;
+            if (baseline < 0 || avg < baseline) {
+                baseline = avg;
+            } else {
+                baseline += (avg - baseline) * 0.05;
+            }
+            overloaded = (double) errors / finished > errorThreshold || avg > baseline * tolerance;
+        }
+        if (overloaded) {
+            limit = Math.max(min, (int) (limit * backoff));
+        } else if (backlog > 0 && peak >= limit) {
+            limit = Math.min(max, limit + 1);
+        } else if (backlog == 0 && peak < limit) {
+            limit = Math.max(min, limit - 1);
+        }
+        finished = 0;
+        errors = 0;
+        latency = 0;
+        peakInFlight = inFlight; // jobs still running count for the next window too
+        return limit;
+    }
+}
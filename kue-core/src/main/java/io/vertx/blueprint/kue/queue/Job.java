@@ -1,6 +1,7 @@
 package io.vertx.blueprint.kue.queue;
 
 import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.LuaScript;
 import io.vertx.blueprint.kue.util.RedisHelper;
 import io.vertx.codegen.annotations.DataObject;
 import io.vertx.codegen.annotations.Fluent;
@@ -16,8 +17,10 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.redis.client.Command;
 import io.vertx.redis.client.RedisAPI;
 import io.vertx.redis.client.Request;
+import io.vertx.redis.client.Response;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 /**
@@ -33,6 +36,11 @@ public class Job {
 
     private static final Logger logger = LoggerFactory.getLogger(Job.class);
 
+    private static final LuaScript ENQUEUE_SCRIPT = LuaScript.load("enqueue");
+    private static final LuaScript COMPLETE_SCRIPT = LuaScript.load("complete");
+    private static final LuaScript STATE_SCRIPT = LuaScript.load("state");
+    private static final LuaScript REMOVE_SCRIPT = LuaScript.load("remove");
+
     private static Kue kue;
     private static RedisAPI client;
     private RedisAPI localClient;
@@ -59,6 +67,8 @@ public class Job {
     private int max_attempts = 1;
     private boolean removeOnComplete = false;
     private int ttl = 0;
+    private String group; // jobs of the same group run one at a time, in FIFO order
+    private String concurrencyKey; // key of the per-key concurrency limit of the type
     private JsonObject backoff;
 
     private int attempts = 0;
@@ -73,6 +83,9 @@ public class Job {
     private long started_at;
     private long duration;
 
+    // completion callback of the worker processing this job, not part of the JSON form
+    private Handler<AsyncResult<JsonObject>> doneHandler;
+
     public Job() {
         this.address_id = UUID.randomUUID().toString();
         _checkStatic();
@@ -96,6 +109,10 @@ public class Job {
             this.promote_at = Long.parseLong(json.getString("promote_at"));
             this.delay = Long.parseLong(json.getString("delay"));
             this.duration = Long.parseLong(json.getString("duration"));
+            this.removeOnComplete = Boolean.parseBoolean(json.getString("removeOnComplete"));
+            if (json.getValue("ttl") != null) {
+                this.ttl = Integer.parseInt(json.getString("ttl"));
+            }
         }
         if (this.id < 0) {
             if ((json.getValue("id")) instanceof CharSequence)
@@ -123,6 +140,9 @@ public class Job {
         this.attempts = other.attempts;
         this.max_attempts = other.max_attempts;
         this.removeOnComplete = other.removeOnComplete;
+        this.group = other.group;
+        this.concurrencyKey = other.concurrencyKey;
+        this.doneHandler = other.doneHandler;
         _checkStatic();
     }
 
@@ -166,73 +186,54 @@ public class Job {
     }
 
     /**
-     * Set new job state.
+     * Set new job state. A job that becomes COMPLETE or FAILED releases its group.
      *
      * @param newState new job state
      * @return async result of this job
      */
     public Future<Job> state(JobState newState) {
+        return this.state(newState, newState == JobState.COMPLETE || newState == JobState.FAILED);
+    }
+
+    /**
+     * Set new job state. The state field, the state indexes and the lease are written by the
+     * state script in one step, which also frees the concurrency slot of a job leaving ACTIVE
+     * and releases the group of the job if asked.
+     *
+     * @param newState new job state
+     * @param release  whether the job is done for good and lets the next job of its group run
+     * @return async result of this job
+     */
+    private Future<Job> state(JobState newState, boolean release) {
         JobState oldState = this.state;
         logger.debug("Job::state(from: " + oldState + ", to:" + newState.name() + ") - Id: " + getId());
 
-        List<Request> commandRequests = new ArrayList<>();
-        Promise<Job> future = Promise.promise();
-        if (oldState != null && !oldState.equals(newState)) {
-            commandRequests.add(Request.cmd(Command.ZREM)
-                    .arg(RedisHelper.getStateKey(oldState))
-                    .arg(this.zid));
-            commandRequests.add(Request.cmd(Command.ZREM)
-                    .arg(RedisHelper.getKey("jobs:" + this.type + ":" + oldState.name()))
-                    .arg(this.zid));
-        }
-
-        commandRequests.add(Request.cmd(Command.HSET)
-                .arg(RedisHelper.getKey("job:" + this.id))
-                .arg("state")
-                .arg(newState.name()));
-        commandRequests.add(Request.cmd(Command.ZADD)
-                .arg(RedisHelper.getKey("jobs:" + newState.name()))
-                .arg(String.valueOf(this.priority.getValue()))
-                .arg(this.zid));
-        commandRequests.add(Request.cmd(Command.ZADD)
-                .arg(RedisHelper.getKey("jobs:" + this.type + ":" + newState.name()))
-                .arg(String.valueOf(this.priority.getValue()))
-                .arg(this.zid));
-
-        switch (newState) { // dispatch different state
-            case ACTIVE:
-                commandRequests.add(Request.cmd(Command.ZADD)
-                        .arg(RedisHelper.getKey("jobs:" + newState.name()))
-                        .arg(String.valueOf(this.priority.getValue() < 0 ? this.priority.getValue() : -this.priority.getValue()))
-                        .arg(this.zid));
-                break;
-            case DELAYED:
-                commandRequests.add(Request.cmd(Command.ZADD)
-                        .arg(RedisHelper.getKey("jobs:" + newState.name()))
-                        .arg(String.valueOf(this.promote_at))
-                        .arg(this.zid));
-                break;
-            case INACTIVE:
-                commandRequests.add(Request.cmd(Command.LPUSH)
-                        .arg(RedisHelper.getKey(this.type + ":jobs"))
-                        .arg("1"));
-                break;
-            default:
+        if (oldState == JobState.ACTIVE && newState != JobState.ACTIVE) {
+            kue.getLeases().unregister(this.address_id);
         }
+        List<String> keys = Arrays.asList(
+                RedisHelper.getKey("job:" + this.id),
+                JobLeases.leasesKey(),
+                JobDispatcher.parkedKey(this.type));
+        List<String> args = Arrays.asList(
+                RedisHelper.getKey(""),
+                this.type,
+                this.zid,
+                oldState == null ? "" : oldState.name(),
+                newState.name(),
+                String.valueOf(this.priority.getValue()),
+                String.valueOf(this.promote_at),
+                this.group == null ? "" : this.group,
+                release ? "1" : "0");
 
         this.state = newState;
 
-        kue.getClient().batch(commandRequests, r -> {
-            if (r.succeeded()) {
-                logger.debug("Successfully updated Job::state(from: " + oldState + ", to:" + newState.name() + ") - Id: " + getId());
-                future.complete(this);
-            } else {
-                logger.error("Failed to updated Job::state(from: " + oldState + ", to:" + newState.name() + ") - Id: " + getId());
-                future.fail(r.cause());
-            }
-        });
-
-        return future.future().compose(Job::updateNow);
+        Future<Job> future = STATE_SCRIPT.eval(kue.getClient(), keys, args).map(r -> {
+            logger.debug("Successfully updated Job::state(from: " + oldState + ", to:" + newState.name() + ") - Id: " + getId());
+            this.scheduleIfDelayed();
+            return this;
+        }).onFailure(ex -> logger.error("Failed to updated Job::state(from: " + oldState + ", to:" + newState.name() + ") - Id: " + getId()));
+        return future.compose(Job::updateNow);
     }
 
     /**
@@ -248,22 +249,60 @@ public class Job {
     }
 
     /**
-     * Complete a job.
+     * Complete a job. Progress, duration, result, state and the state indexes are written in one
+     * atomic script; a job that should be removed on completion is deleted by the same script,
+     * which also releases the group of the job.
+     * <p>The script is fenced by the claim: it fails with an {@link IllegalStateException} unless
+     * the job is still ACTIVE with a lease and its `started_at` is the one of this claim, e.g.
+     * after the lease expired and the job was re-queued by the reaper.</p>
      */
     public Future<Job> complete() {
-        return this.setProgress(100)
-                .set("progress", "100")
-                .compose(r -> r.state(JobState.COMPLETE));
+        JobState oldState = this.state;
+        this.progress = 100;
+        this.state = JobState.COMPLETE;
+        this.updated_at = System.currentTimeMillis();
+        List<String> keys = Arrays.asList(
+                RedisHelper.getKey("job:" + this.id),
+                RedisHelper.getKey("job:" + this.id + ":log"),
+                RedisHelper.getKey("jobs"),
+                RedisHelper.getStateKey(JobState.COMPLETE),
+                RedisHelper.getKey("jobs:" + this.type + ":" + JobState.COMPLETE.name()),
+                JobLeases.leasesKey());
+        List<String> args = Arrays.asList(
+                RedisHelper.getKey(""),
+                this.type,
+                this.zid,
+                String.valueOf(this.priority.getValue()),
+                String.valueOf(this.updated_at),
+                this.removeOnComplete ? "1" : "0",
+                String.valueOf(this.duration),
+                this.result == null ? "" : this.result.encodePrettily(),
+                String.valueOf(this.started_at));
+        return COMPLETE_SCRIPT.eval(kue.getClient(), keys, args).compose(r -> {
+            if (r.toInteger() == 0) {
+                this.state = oldState;
+                return Future.failedFuture(new IllegalStateException("Job is no longer held by this worker: " + this.id));
+            }
+            logger.debug("Job::complete(from: " + oldState + ") - Id: " + getId());
+            if (this.removeOnComplete) {
+                this.emit("remove", new JsonObject().put("id", this.id));
+            }
+            return Future.succeededFuture(this);
+        });
     }
 
     /**
      * Set a job to `failed` state.
      */
     public Future<Job> failed() {
+        return this.failed(true);
+    }
+
+    private Future<Job> failed(boolean release) {
         this.failed_at = System.currentTimeMillis();
         return this.updateNow()
                 .compose(j -> j.set("failed_at", String.valueOf(j.failed_at)))
-                .compose(j -> j.state(JobState.FAILED));
+                .compose(j -> j.state(JobState.FAILED, release));
     }
 
     /**
@@ -432,24 +471,13 @@ public class Job {
      */
     Future<Job> failedAttempt(Throwable err) {
         return this.error(err)
-                .compose(Job::failed)
+                .compose(j -> j.failed(j.max_attempts - j.attempts <= 0)) // the group waits for the retries
                 .compose(Job::attemptInternal);
     }
 
-    /**
-     * Refresh ttl
-     */
-    Future<Job> refreshTtl() {
-        Promise<Job> future = Promise.promise();
-        if (this.state == JobState.ACTIVE && this.ttl > 0) {
-            getClient().zadd(Arrays.asList(RedisHelper.getStateKey(this.state),
-                    String.valueOf(System.currentTimeMillis() + ttl), this.zid), _completer(future, this));
-        }
-        return future.future();
-    }
-
     /**
      * Save the job to the backend.
+     * A new job is persisted and indexed with the enqueue script in a single round trip.
      */
     public Future<Job> save() {
         // check
@@ -458,35 +486,179 @@ public class Job {
         if (this.id > 0)
             return update();
 
-        Promise<Job> future = Promise.promise();
+        prepareNew();
+        return kue.getIdAllocator().allocate(1,
+                id -> ENQUEUE_SCRIPT.eval(kue.getClient(), enqueueKeys(), enqueueArgs(id, 1)).map(Response::toLong),
+                size -> ENQUEUE_SCRIPT.eval(kue.getClient(), enqueueKeys(), enqueueArgs(0, size)).map(Response::toLong))
+                .map(id -> {
+                    this.id = id;
+                    this.zid = RedisHelper.createFIFO(id);
+                    this.scheduleIfDelayed();
+                    return this;
+                });
+    }
 
-        // generate id
-        getClient().incr(RedisHelper.getKey("ids"), res -> {
-            if (res.succeeded()) {
-                this.id = res.result().toLong();
-                this.zid = RedisHelper.createFIFO(id);
-                String key = RedisHelper.getKey("job:" + this.id);
-                // need subscribe
-                if (this.delay > 0) {
-                    this.state = JobState.DELAYED;
-                }
-                getClient().sadd(Arrays.asList(RedisHelper.getKey("job:types"), this.type), _failure());
-                this.created_at = System.currentTimeMillis();
-                this.promote_at = this.created_at + this.delay;
-                // save job
-                List<String> hmsetArgs = new ArrayList<>();
-                hmsetArgs.add(key);
-                this.toJson().getMap().forEach((key1, value) -> {
-                    hmsetArgs.add(key1);
-                    hmsetArgs.add(value.toString());
+    /**
+     * Save a new job only if the guard key holds the expected value, setting it to the new value
+     * in the same atomic step. This lets several nodes race to enqueue the same job, e.g. a run
+     * of a recurring job, with exactly one of them succeeding.
+     *
+     * @param guardKey   guard key
+     * @param expected   expected value of the guard key, or an empty string if it must not exist
+     * @param guardValue new value of the guard key
+     * @return async result telling whether the job was saved
+     */
+    Future<Boolean> saveGuarded(String guardKey, String expected, String guardValue) {
+        Objects.requireNonNull(this.type, "Job type cannot be null");
+        prepareNew();
+        List<String> keys = new ArrayList<>(enqueueKeys());
+        keys.add(guardKey);
+        AtomicBoolean saved = new AtomicBoolean(false);
+        Function<Response, Long> id = r -> {
+            saved.set(r.toLong() > 0);
+            return Math.abs(r.toLong());
+        };
+        return kue.getIdAllocator().allocate(1,
+                first -> ENQUEUE_SCRIPT.eval(kue.getClient(), keys, enqueueArgs(first, 1, expected, guardValue)).map(id),
+                size -> ENQUEUE_SCRIPT.eval(kue.getClient(), keys, enqueueArgs(0, size, expected, guardValue)).map(id))
+                .map(first -> {
+                    if (saved.get()) {
+                        this.id = first;
+                        this.zid = RedisHelper.createFIFO(first);
+                        this.scheduleIfDelayed();
+                    }
+                    return saved.get();
                 });
-                getClient().hmset(hmsetArgs, _completer(future, this));
-            } else {
-                future.fail(res.cause());
+    }
+
+    /**
+     * Save many new jobs to the backend. Contiguous ids are taken from the id allocator
+     * (with at most one INCRBY) and all jobs are persisted and indexed in one pipelined batch.
+     *
+     * @param jobs new jobs to save
+     * @return async result of the assigned ids, in the order of the given jobs
+     */
+    public static Future<List<Long>> saveAll(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return Future.succeededFuture(new ArrayList<>());
+        }
+        for (Job job : jobs) {
+            Objects.requireNonNull(job.type, "Job type cannot be null");
+            if (job.id > 0) {
+                return Future.failedFuture(new IllegalArgumentException("Job " + job.id + " has already been saved"));
             }
+        }
+
+        return kue.getIdAllocator().allocate(jobs.size(),
+                first -> enqueueAll(jobs, first),
+                size -> {
+                    Promise<Long> future = Promise.promise();
+                    client.incrby(RedisHelper.getKey("ids"), String.valueOf(size), r -> {
+                        if (r.succeeded()) {
+                            future.complete(r.result().toLong() - size + 1);
+                        } else {
+                            future.fail(r.cause());
+                        }
+                    });
+                    return future.future().compose(first -> enqueueAll(jobs, first));
+                })
+                .map(first -> {
+                    List<Long> ids = new ArrayList<>();
+                    for (Job job : jobs) {
+                        ids.add(job.id);
+                    }
+                    return ids;
+                });
+    }
+
+    /**
+     * Persist and index new jobs with ids starting from `first`, in one pipelined batch.
+     *
+     * @return async result of the first id
+     */
+    private static Future<Long> enqueueAll(List<Job> jobs, long first) {
+        List<Request> commandRequests = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            job.prepareNew();
+            commandRequests.add(ENQUEUE_SCRIPT.request(job.enqueueKeys(), job.enqueueArgs(first + i, 1)));
+        }
+        return ENQUEUE_SCRIPT.batch(kue.getClient(), commandRequests).map(r -> {
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                job.id = first + i;
+                job.zid = RedisHelper.createFIFO(job.id);
+                job.scheduleIfDelayed();
+            }
+            return first;
         });
+    }
 
-        return future.future().compose(Job::update);
+    /**
+     * Hand a job just delayed by this instance to the promoter, so it is promoted on time
+     * without waiting for the promoter to read it back from Redis.
+     */
+    private void scheduleIfDelayed() {
+        if (this.state == JobState.DELAYED) {
+            kue.getPromoter().schedule(this.zid, this.promote_at);
+        }
+    }
+
+    /**
+     * Set the state and timestamps of a job that is about to be saved for the first time.
+     */
+    private void prepareNew() {
+        // need subscribe
+        if (this.delay > 0) {
+            this.state = JobState.DELAYED;
+        }
+        this.created_at = System.currentTimeMillis();
+        this.promote_at = this.created_at + this.delay;
+        this.updated_at = this.created_at;
+    }
+
+    private List<String> enqueueKeys() {
+        return Arrays.asList(
+                RedisHelper.getKey("ids"),
+                RedisHelper.getKey("job:types"),
+                RedisHelper.getKey("jobs"),
+                RedisHelper.getStateKey(this.state),
+                RedisHelper.getKey("jobs:" + this.type + ":" + this.state.name()),
+                RedisHelper.getKey(this.type + ":jobs"));
+    }
+
+    /**
+     * Arguments of the enqueue script.
+     *
+     * @param id      pre-allocated job id, or 0 to let the script reserve ids
+     * @param reserve number of ids the script reserves when `id` is 0
+     */
+    private List<String> enqueueArgs(long id, int reserve) {
+        return enqueueArgs(id, reserve, "", "");
+    }
+
+    /**
+     * Arguments of the enqueue script, with the expected and new value of its guard key.
+     */
+    private List<String> enqueueArgs(long id, int reserve, String expected, String guardValue) {
+        String priorityScore = String.valueOf(this.priority.getValue());
+        List<String> args = new ArrayList<>();
+        args.add(RedisHelper.getKey(""));
+        args.add(String.valueOf(id));
+        args.add(String.valueOf(reserve));
+        args.add(this.type);
+        args.add(this.state.name());
+        args.add(priorityScore);
+        args.add(this.state == JobState.DELAYED ? String.valueOf(this.promote_at) : priorityScore);
+        args.add(expected);
+        args.add(guardValue);
+        this.toJson().getMap().forEach((key, value) -> {
+            if (!"id".equals(key) && !"zid".equals(key)) { // assigned by the script
+                args.add(key);
+                args.add(value.toString());
+            }
+        });
+        return args;
     }
 
     /**
@@ -524,33 +696,24 @@ public class Job {
     }
 
     /**
-     * Remove the job.
+     * Remove the job. The hash, the log, the indexes and the lease of the job are removed in
+     * one atomic script, which also frees the concurrency slot of the job and releases its group.
      */
     public Future<Void> remove() {
-        Promise<Void> future = Promise.promise();
-        List<Request> commandRequests = new ArrayList<>();
-        commandRequests.add(Request.cmd(Command.ZREM)
-                .arg(RedisHelper.getKey("jobs:" + this.stateName()))
-                .arg(this.zid));
-        commandRequests.add(Request.cmd(Command.ZREM)
-                .arg(RedisHelper.getKey("jobs:" + this.type + ":" + this.stateName()))
-                .arg(this.zid));
-        commandRequests.add(Request.cmd(Command.ZREM)
-                .arg(RedisHelper.getKey("jobs"))
-                .arg(this.zid));
-        commandRequests.add(Request.cmd(Command.DEL)
-                .arg(RedisHelper.getKey("job:" + this.id + ":log")));
-        commandRequests.add(Request.cmd(Command.DEL)
-                .arg(RedisHelper.getKey("job:" + this.id)));
-        kue.getClient().batch(commandRequests, r -> {
-            if (r.succeeded()) {
-                this.emit("remove", new JsonObject().put("id", this.id));
-                future.complete();
-            } else {
-                future.fail(r.cause());
-            }
-        });
-        return future.future();
+        List<String> keys = Arrays.asList(
+                RedisHelper.getKey("job:" + this.id),
+                RedisHelper.getKey("job:" + this.id + ":log"),
+                RedisHelper.getKey("jobs"),
+                JobLeases.leasesKey());
+        List<String> args = Arrays.asList(
+                RedisHelper.getKey(""),
+                this.type,
+                this.zid,
+                this.stateName());
+        kue.getLeases().unregister(this.address_id);
+        return REMOVE_SCRIPT.eval(kue.getClient(), keys, args)
+                .onSuccess(r -> this.emit("remove", new JsonObject().put("id", this.id)))
+                .mapEmpty();
     }
 
     /**
@@ -684,7 +847,7 @@ public class Job {
      */
     @Fluent
     public Job done(Throwable ex) {
-        eventBus.send(Kue.workerAddress("done_fail", this), ex.getMessage());
+        notifyDone(Future.failedFuture(ex));
         return this;
     }
 
@@ -693,7 +856,27 @@ public class Job {
      */
     @Fluent
     public Job done() {
-        eventBus.send(Kue.workerAddress("done", this), this.toJson());
+        notifyDone(Future.succeededFuture(this.result));
+        return this;
+    }
+
+    /**
+     * Hand the outcome to the worker processing this job. Jobs handed to a process handler
+     * carry the callback themselves; other instances of the same job (e.g. fetched again with
+     * {@link Kue#getJob(long)}) find it through the Kue instance by address id.
+     */
+    private void notifyDone(AsyncResult<JsonObject> ar) {
+        Handler<AsyncResult<JsonObject>> handler = doneHandler != null ? doneHandler
+                : kue.getDoneHandler(address_id);
+        if (handler != null) {
+            handler.handle(ar);
+        } else {
+            logger.warn("No worker is processing the job. Job id: " + id);
+        }
+    }
+
+    Job setDoneHandler(Handler<AsyncResult<JsonObject>> doneHandler) {
+        this.doneHandler = doneHandler;
         return this;
     }
 
@@ -884,6 +1067,36 @@ public class Job {
         return this;
     }
 
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * Set the group of the job, e.g. a customer id. Jobs of the same type and group are
+     * processed one at a time, in the order they were saved; jobs of other groups are not held up.
+     *
+     * @param group group key
+     */
+    public Job setGroup(String group) {
+        this.group = group;
+        return this;
+    }
+
+    public String getConcurrencyKey() {
+        return concurrencyKey;
+    }
+
+    /**
+     * Set the concurrency key of the job, e.g. a user id. At most as many jobs of the same type
+     * and concurrency key as set with {@link Kue#limitConcurrency} are active at the same time.
+     *
+     * @param concurrencyKey concurrency key
+     */
+    public Job setConcurrencyKey(String concurrencyKey) {
+        this.concurrencyKey = concurrencyKey;
+        return this;
+    }
+
     public int getTtl() {
         return ttl;
     }
@@ -0,0 +1,343 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.LuaScript;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.RedisConnection;
+import io.vertx.redis.client.Request;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dequeues jobs on behalf of all workers of a {@link Kue} instance.
+ * <p>For every job type the dispatcher owns a small number of blocking Redis connections
+ * (`job.dispatcher.connections`, 1 by default) parked in BLPOP on the wake-up sentinels. When
+ * woken up it claims as many jobs as there are local workers waiting for that type (at least
+ * `job.prefetch`) with the claim script and fans them out, keeping the surplus in a local buffer.
+ * The number of Redis connections thus grows with the number of job types, not with the number
+ * of workers.</p>
+ * <p>Job types can be rate limited with {@link Kue#rateLimit} and their concurrency capped with
+ * {@link Kue#limitConcurrency}: the claim script then takes no more jobs than the limits allow
+ * and tells how long to wait before trying again, and the pollers of a throttled type sleep
+ * that long instead of blocking on BLPOP.</p>
+ */
+public class JobDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobDispatcher.class);
+
+    private static final LuaScript CLAIM_SCRIPT = LuaScript.load("claim");
+
+    private final Kue kue;
+    private final Vertx vertx;
+    private final JsonObject config;
+    private final int connections;
+    private final int prefetch;
+    private final int blockTimeout;
+    private final long limitRetry;
+    private final Map<String, TypeDispatcher> dispatchers = new ConcurrentHashMap<>();
+    private final Map<String, Long> throttledUntil = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    public JobDispatcher(Kue kue, JsonObject config) {
+        this.kue = kue;
+        this.vertx = kue.getVertx();
+        this.config = config;
+        this.connections = Math.max(1, config.getInteger("job.dispatcher.connections", 1));
+        this.prefetch = Math.max(1, config.getInteger("job.prefetch", 1));
+        this.blockTimeout = Math.max(1, config.getInteger("job.dispatcher.timeout", 5)); // seconds
+        this.limitRetry = Math.max(1, config.getLong("job.concurrency.retry", 100L));
+    }
+
+    /**
+     * Key of the inactive jobs of a type parked behind a busy concurrency key by the claim script.
+     */
+    public static String parkedKey(String type) {
+        return RedisHelper.getKey("jobs:" + type + ":" + JobState.INACTIVE.name() + ":parked");
+    }
+
+    /**
+     * Take the next job of the given type. The job is already ACTIVE when handed out.
+     *
+     * @param type job type
+     * @return async result of the job
+     */
+    public Future<Job> take(String type) {
+        return dispatchers.computeIfAbsent(type, TypeDispatcher::new).take();
+    }
+
+    /**
+     * Close all blocking connections and hand jobs claimed but not yet handed out back to the queue.
+     */
+    public Future<Void> close() {
+        closed = true;
+        List<Future<?>> futures = new ArrayList<>();
+        dispatchers.values().forEach(d -> futures.add(d.close()));
+        return CompositeFuture.join(new ArrayList<>(futures)).mapEmpty();
+    }
+
+    /**
+     * Get how long the rate or concurrency limit of a job type keeps it from being claimed,
+     * as of the last claim.
+     *
+     * @param type job type
+     * @return the time to wait in ms, 0 if the type is not throttled
+     */
+    long throttled(String type) {
+        Long until = throttledUntil.get(type);
+        return until == null ? 0 : Math.max(0, until - System.currentTimeMillis());
+    }
+
+    /**
+     * Claim up to `count` inactive jobs with the claim script. In a single round trip the script
+     * takes tokens from the rate limit of the type (if any), pops the highest-priority zids within
+     * the concurrency limits of the type and of the concurrency keys of the jobs, moves them to
+     * ACTIVE in the global and per-type sets, stamps `started_at`/`updated_at`,
+     * gives them a lease and returns the job hashes. The leases are renewed from then on,
+     * including while a job waits in the local buffer.
+     *
+     * @param type     job type
+     * @param count    max number of jobs to claim
+     * @param consumed number of wake-up sentinels already consumed by the caller
+     * @return the async result of claimed jobs (in priority order, possibly empty)
+     */
+    Future<List<Job>> claim(String type, int count, int consumed) {
+        List<String> keys = Arrays.asList(
+                RedisHelper.getKey("jobs:" + type + ":" + JobState.INACTIVE.name()),
+                RedisHelper.getStateKey(JobState.INACTIVE),
+                RedisHelper.getKey("jobs:" + type + ":" + JobState.ACTIVE.name()),
+                RedisHelper.getStateKey(JobState.ACTIVE),
+                RedisHelper.getKey(type + ":jobs"),
+                JobLeases.leasesKey(),
+                RedisHelper.getKey("ratelimit:" + type),
+                RedisHelper.getKey("concurrency:" + type),
+                parkedKey(type));
+        long now = System.currentTimeMillis();
+        List<String> args = Arrays.asList(String.valueOf(count),
+                String.valueOf(now),
+                RedisHelper.getKey(""),
+                String.valueOf(consumed),
+                String.valueOf(kue.getLeases().getDuration()),
+                String.valueOf(limitRetry),
+                type);
+        return CLAIM_SCRIPT.eval(kue.getClient(), keys, args).map(r -> {
+            long wait = r.get(0).toLong();
+            if (wait > 0) {
+                throttledUntil.put(type, now + wait);
+            } else {
+                throttledUntil.remove(type);
+            }
+            List<Job> jobs = new ArrayList<>();
+            for (int i = 1; i < r.size(); i++) {
+                Job job = new Job(RedisHelper.toJsonObject(r.get(i)));
+                kue.getLeases().register(job);
+                jobs.add(job);
+            }
+            return jobs;
+        });
+    }
+
+    /**
+     * Dispatching state of one job type.
+     */
+    private final class TypeDispatcher {
+
+        private final String type;
+        private final String sentinelKey;
+        private final Deque<Promise<Job>> waiters = new ArrayDeque<>();
+        private final Deque<Job> buffer = new ArrayDeque<>();
+        private final List<RedisConnection> pollers = new ArrayList<>();
+        private final Deque<RedisConnection> parked = new ArrayDeque<>();
+        private int connecting = 0;
+        private int claiming = 0; // jobs requested by claims in flight
+
+        private TypeDispatcher(String type) {
+            this.type = type;
+            this.sentinelKey = RedisHelper.getKey(type + ":jobs");
+        }
+
+        private Future<Job> take() {
+            Promise<Job> promise = Promise.promise();
+            Job job;
+            synchronized (this) {
+                // a job that waited in the buffer past its lease may have been reaped meanwhile
+                while ((job = buffer.poll()) != null && !kue.getLeases().handOut(job)) {
+                    logger.warn("Lease of buffered job lapsed, dropping it. Job id: " + job.getId());
+                }
+                if (job == null) {
+                    waiters.add(promise);
+                }
+            }
+            if (job != null) {
+                // claimed ahead of time: `started_at` stays the time stamped by the claim, the worker
+                // measures the duration from the hand-out
+                promise.complete(job);
+            } else {
+                wakeUp();
+            }
+            return promise.future();
+        }
+
+        /**
+         * Make sure a poller is working on the current demand: resume a parked one or open
+         * a new blocking connection while below `job.dispatcher.connections`.
+         */
+        private void wakeUp() {
+            RedisConnection conn;
+            synchronized (this) {
+                conn = parked.poll();
+                if (conn == null) {
+                    if (closed || pollers.size() + connecting >= connections) {
+                        return;
+                    }
+                    connecting++;
+                }
+            }
+            if (conn != null) {
+                poll(conn);
+                return;
+            }
+            RedisHelper.client(vertx, config).connect(r -> {
+                synchronized (this) {
+                    connecting--;
+                    if (r.succeeded()) {
+                        pollers.add(r.result());
+                    }
+                }
+                if (r.succeeded()) {
+                    logger.debug("Opened dispatcher connection for job type: " + type);
+                    poll(r.result());
+                } else {
+                    logger.error("Failed to open dispatcher connection for job type: " + type, r.cause());
+                    vertx.setTimer(1000, l -> wakeUp());
+                }
+            });
+        }
+
+        /**
+         * Number of jobs still to claim for waiting workers.
+         */
+        private synchronized int want() {
+            return waiters.size() - claiming;
+        }
+
+        /**
+         * Number of jobs still to claim for waiting workers, parking the poller if there are none.
+         */
+        private synchronized int demandOrPark(RedisConnection conn) {
+            int want = want();
+            if (want <= 0) {
+                parked.add(conn);
+            }
+            return want;
+        }
+
+        private void poll(RedisConnection conn) {
+            if (closed) {
+                return;
+            }
+            int want = demandOrPark(conn);
+            if (want > 0) {
+                claimFor(conn, want, 0);
+            }
+        }
+
+        private void claimFor(RedisConnection conn, int want, int consumed) {
+            int count = Math.max(want, prefetch);
+            synchronized (this) {
+                claiming += count;
+            }
+            claim(type, count, consumed).onComplete(r -> {
+                synchronized (this) {
+                    claiming -= count;
+                }
+                if (r.succeeded()) {
+                    deliver(r.result());
+                    long wait = throttled(type);
+                    if (wait > 0) { // over a limit, the jobs left stay INACTIVE meanwhile
+                        vertx.setTimer(wait, l -> poll(conn));
+                    } else if (r.result().isEmpty()) {
+                        block(conn);
+                    } else {
+                        poll(conn);
+                    }
+                } else {
+                    logger.error("Failed to claim jobs of type: " + type, r.cause());
+                    vertx.setTimer(1000, l -> poll(conn));
+                }
+            });
+        }
+
+        /**
+         * Wait on the blocking connection for a wake-up sentinel of this type.
+         */
+        private void block(RedisConnection conn) {
+            if (closed || demandOrPark(conn) <= 0) {
+                return;
+            }
+            conn.send(Request.cmd(Command.BLPOP).arg(sentinelKey).arg(String.valueOf(blockTimeout)), r -> {
+                if (closed || kue.isClosed()) {
+                    return;
+                }
+                if (r.failed()) {
+                    logger.error("Failed to wait for jobs of type: " + type, r.cause());
+                    synchronized (this) {
+                        pollers.remove(conn);
+                    }
+                    conn.close();
+                    vertx.setTimer(1000, l -> wakeUp());
+                } else if (r.result() == null) { // timed out
+                    block(conn);
+                } else {
+                    claimFor(conn, Math.max(1, want()), 1);
+                }
+            });
+        }
+
+        private void deliver(List<Job> jobs) {
+            List<Promise<Job>> promises = new ArrayList<>();
+            List<Job> handedOut = new ArrayList<>();
+            synchronized (this) {
+                for (Job job : jobs) {
+                    Promise<Job> promise = waiters.peek();
+                    if (promise == null) {
+                        buffer.add(job);
+                    } else if (kue.getLeases().handOut(job)) {
+                        waiters.poll();
+                        promises.add(promise);
+                        handedOut.add(job);
+                    } else {
+                        logger.warn("Lease of claimed job lapsed, dropping it. Job id: " + job.getId());
+                    }
+                }
+            }
+            for (int i = 0; i < promises.size(); i++) {
+                promises.get(i).complete(handedOut.get(i));
+            }
+        }
+
+        private Future<Void> close() {
+            List<RedisConnection> conns;
+            List<Job> jobs;
+            synchronized (this) {
+                conns = new ArrayList<>(pollers);
+                pollers.clear();
+                parked.clear();
+                jobs = new ArrayList<>(buffer);
+                buffer.clear();
+            }
+            conns.forEach(RedisConnection::close);
+            List<Future<?>> futures = new ArrayList<>();
+            jobs.forEach(job -> futures.add(job.inactive()));
+            return CompositeFuture.join(new ArrayList<>(futures)).mapEmpty();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Hands out job ids from blocks reserved on `vertx_kue:ids` with INCRBY, so producers
+ * of one {@link io.vertx.blueprint.kue.Kue} instance do not hit the shared counter for every job.
+ * <p>Ids are handed out strictly increasing and in request order, which keeps the FIFO order
+ * given by {@link io.vertx.blueprint.kue.util.RedisHelper#createFIFO(long)} for the jobs of
+ * this instance. The block size adapts to the enqueue rate: it grows while blocks are used up
+ * faster than `job.id.block.interval` and shrinks back towards `job.id.block.min` when they
+ * last longer, so idle producers reserve a single id at a time like before and ids of
+ * different nodes never drift apart by more than about one interval.</p>
+ */
+public class JobIdAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobIdAllocator.class);
+
+    private final int minBlock;
+    private final int maxBlock;
+    private final long interval;
+
+    private final Deque<Allocation> pending = new ArrayDeque<>();
+    private boolean reserving = false;
+    private long next = 1;
+    private long last = 0; // next > last means the local block is used up
+    private int blockSize;
+    private long reservedAt = 0;
+
+    public JobIdAllocator(JsonObject config) {
+        this.minBlock = Math.max(1, config.getInteger("job.id.block.min", 1));
+        this.maxBlock = Math.max(minBlock, config.getInteger("job.id.block.max", 1024));
+        this.interval = config.getLong("job.id.block.interval", 100L);
+        this.blockSize = minBlock;
+    }
+
+    /**
+     * Allocate `count` contiguous ids.
+     * <p>If the local block holds enough ids, `withIds` is called with the first one. Otherwise
+     * `withReservation` is called with the number of ids to reserve (at least `count`); it must
+     * reserve them with INCRBY, use the first `count` ones and return the first reserved id.
+     * The rest of the reservation becomes the new local block.</p>
+     *
+     * @param count           number of ids
+     * @param withIds         work to do with ids taken from the local block
+     * @param withReservation work to do while reserving a new block
+     * @return async result of the first allocated id
+     */
+    public Future<Long> allocate(int count, Function<Long, Future<Long>> withIds,
+                                 Function<Integer, Future<Long>> withReservation) {
+        Promise<Long> promise = Promise.promise();
+        synchronized (this) {
+            pending.add(new Allocation(count, withIds, withReservation, promise));
+        }
+        drain();
+        return promise.future();
+    }
+
+    private void drain() {
+        List<Runnable> actions = new ArrayList<>();
+        synchronized (this) {
+            while (!reserving && !pending.isEmpty()) {
+                Allocation allocation = pending.poll();
+                boolean stale = System.currentTimeMillis() - reservedAt > interval * 2;
+                if (!stale && last - next + 1 >= allocation.count) {
+                    long first = next;
+                    next += allocation.count;
+                    actions.add(() -> allocation.withIds.apply(first).onComplete(allocation.promise));
+                } else {
+                    // ids left in the block are skipped so that ids stay increasing, and a block
+                    // left over from a burst is not used long after it was reserved
+                    reserving = true;
+                    int size = allocation.count + adaptBlockSize() - 1;
+                    actions.add(() -> allocation.withReservation.apply(size).onComplete(r -> {
+                        synchronized (this) {
+                            reserving = false;
+                            if (r.succeeded()) {
+                                next = r.result() + allocation.count;
+                                last = r.result() + size - 1;
+                            }
+                        }
+                        allocation.promise.handle(r);
+                        drain();
+                    }));
+                }
+            }
+        }
+        actions.forEach(Runnable::run);
+    }
+
+    /**
+     * Compute the block size for the next reservation from how long the previous block lasted.
+     */
+    private int adaptBlockSize() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - reservedAt;
+        reservedAt = now;
+        if (elapsed < interval / 2) {
+            blockSize = Math.min(maxBlock, blockSize * 2);
+        } else if (elapsed > interval * 2) {
+            blockSize = Math.max(minBlock, blockSize / 2);
+        }
+        logger.trace("Reserving job id block of size " + blockSize);
+        return blockSize;
+    }
+
+    private static final class Allocation {
+        private final int count;
+        private final Function<Long, Future<Long>> withIds;
+        private final Function<Integer, Future<Long>> withReservation;
+        private final Promise<Long> promise;
+
+        private Allocation(int count, Function<Long, Future<Long>> withIds,
+                           Function<Integer, Future<Long>> withReservation, Promise<Long> promise) {
+            this.count = count;
+            this.withIds = withIds;
+            this.withReservation = withReservation;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.LuaScript;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Request;
+import io.vertx.redis.client.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leases of the active jobs processed by the workers of a {@link Kue} instance.
+ * <p>The claim script gives every claimed job a lease in `jobs:ACTIVE:leases`, scored by its
+ * expiry time (`job.lease.duration` from now, but never past the job ttl). From the claim until
+ * the job leaves ACTIVE, including while it waits in the buffer of the dispatcher, the leases of
+ * all local jobs are renewed every `job.lease.renew` milliseconds with one ZADD. The ttl of a job
+ * counts from the time it is handed out to a worker, so time spent in the buffer does not
+ * shorten it. A lease that lapsed is not renewed any more, as the reaper may have taken the job
+ * back, and a buffered job whose lease lapsed is dropped instead of being handed out.</p>
+ * <p>The reaper moves jobs whose lease expired, e.g. because their worker crashed, back to
+ * INACTIVE or to FAILED with the reap script. It only reads expired leases, so its cost follows
+ * the number of expired jobs and not the number of active ones.</p>
+ */
+public class JobLeases {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLeases.class);
+
+    private static final LuaScript REAP_SCRIPT = LuaScript.load("reap");
+
+    private final Kue kue;
+    private final Vertx vertx;
+    private final long duration;
+    private final long renewInterval;
+    private final int reapLimit;
+    private final Map<String, Lease> leased = new ConcurrentHashMap<>();
+    private long renewTimer = -1;
+
+    public JobLeases(Kue kue, JsonObject config) {
+        this.kue = kue;
+        this.vertx = kue.getVertx();
+        this.duration = config.getLong("job.lease.duration", 30000L);
+        this.renewInterval = config.getLong("job.lease.renew", duration / 3);
+        this.reapLimit = config.getInteger("job.ttl.limit", 1000);
+    }
+
+    public static String leasesKey() {
+        return RedisHelper.getKey("jobs:" + JobState.ACTIVE.name() + ":leases");
+    }
+
+    /**
+     * Lease duration given to claimed jobs, in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Keep renewing the lease of a job claimed by this instance until it leaves ACTIVE.
+     */
+    public void register(Job job) {
+        long expiry = job.getStarted_at() + duration; // as given by the claim script
+        if (job.getTtl() > 0) {
+            expiry = Math.min(expiry, job.getStarted_at() + job.getTtl());
+        }
+        leased.put(job.getAddress_id(), new Lease(job, expiry));
+        synchronized (this) {
+            if (renewTimer < 0) {
+                renewTimer = vertx.setPeriodic(renewInterval, l -> renew());
+            }
+        }
+    }
+
+    /**
+     * Mark a claimed job as handed out to a worker: its ttl counts from now on.
+     *
+     * @return false if the lease of the job lapsed meanwhile, in which case the job may already
+     * be back in the queue and must not be processed
+     */
+    public boolean handOut(Job job) {
+        long now = System.currentTimeMillis();
+        Lease lease = leased.get(job.getAddress_id());
+        if (lease == null || lease.expiry <= now) {
+            leased.remove(job.getAddress_id());
+            return false;
+        }
+        lease.handedOutAt = now;
+        return true;
+    }
+
+    /**
+     * Stop renewing the lease of a job.
+     *
+     * @param addressId job address id
+     */
+    public void unregister(String addressId) {
+        leased.remove(addressId);
+    }
+
+    /**
+     * Renew the leases of all local jobs in flight with one ZADD. Leases already taken away by
+     * the reaper are not recreated, and lapsed leases are not renewed.
+     */
+    public Future<Void> renew() {
+        long now = System.currentTimeMillis();
+        List<Lease> renewed = new ArrayList<>();
+        List<Long> expiries = new ArrayList<>();
+        Request request = Request.cmd(Command.ZADD).arg(leasesKey()).arg("XX");
+        leased.values().forEach(lease -> {
+            if (lease.expiry <= now) { // the reaper may have taken the job back
+                return;
+            }
+            long expiry = now + duration;
+            if (lease.handedOutAt > 0 && lease.job.getTtl() > 0) {
+                expiry = Math.min(expiry, lease.handedOutAt + lease.job.getTtl());
+            }
+            request.arg(String.valueOf(expiry)).arg(lease.job.getZid());
+            renewed.add(lease);
+            expiries.add(expiry);
+        });
+        if (renewed.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        return kue.getClient().send(request).onSuccess(r -> {
+            for (int i = 0; i < renewed.size(); i++) {
+                renewed.get(i).expiry = expiries.get(i);
+            }
+        }).onFailure(ex -> logger.error("Failed to renew job leases", ex)).mapEmpty();
+    }
+
+    /**
+     * Recover up to `job.ttl.limit` jobs whose lease expired and emit their `failed_attempt`
+     * or `failed` event. The group of a job failed for good is released by the reap script.
+     *
+     * @return async result of the recovered jobs
+     */
+    public Future<List<Job>> reap() {
+        List<String> keys = Arrays.asList(
+                leasesKey(),
+                RedisHelper.getStateKey(JobState.ACTIVE),
+                RedisHelper.getStateKey(JobState.INACTIVE),
+                RedisHelper.getStateKey(JobState.FAILED));
+        List<String> args = Arrays.asList(
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(reapLimit),
+                RedisHelper.getKey(""));
+        return REAP_SCRIPT.eval(kue.getClient(), keys, args).map(r -> {
+            List<Job> jobs = new ArrayList<>();
+            for (Response it : r) {
+                Job job = new Job(RedisHelper.toJsonObject(it));
+                logger.warn("Lease of job expired. Job id: " + job.getId() + " - Now: " + job.getState());
+                String event = job.getState() == JobState.FAILED ? "failed" : "failed_attempt";
+                JsonObject data = new JsonObject()
+                        .put("extra", new JsonObject().put("message", "Lease expired"))
+                        .put("job", job.toJson());
+                vertx.eventBus().send(Kue.workerAddress("job_" + event), data);
+                vertx.eventBus().send(Kue.getCertainJobAddress(event, job), data);
+                jobs.add(job);
+            }
+            return jobs;
+        });
+    }
+
+    /**
+     * Stop renewing leases.
+     */
+    public synchronized void close() {
+        if (renewTimer >= 0) {
+            vertx.cancelTimer(renewTimer);
+            renewTimer = -1;
+        }
+        leased.clear();
+    }
+
+    /**
+     * Lease of a local job: its expiry as last written to Redis, and the time the job was handed
+     * out to a worker (0 while it waits in the buffer).
+     */
+    private static final class Lease {
+
+        private final Job job;
+        private volatile long expiry;
+        private volatile long handedOutAt;
+
+        private Lease(Job job, long expiry) {
+            this.job = job;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.LuaScript;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.blueprint.kue.util.TimingWheel;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.client.Response;
+import io.vertx.redis.client.ResponseType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Promotes due delayed jobs of a {@link Kue} instance.
+ * <p>Due jobs are moved from DELAYED to INACTIVE by the promote script in a single atomic round
+ * trip, which also pushes the wake-up sentinels. As the script removes the jobs from DELAYED,
+ * a job is never promoted twice, even by concurrent promoters.</p>
+ * <p>By default (`job.promotion.wheel`) the promoter keeps the delayed jobs due within the next
+ * `job.promotion.window` milliseconds in a local {@link TimingWheel} ticking every
+ * `job.promotion.tick` milliseconds, and promotes each job within a tick of its `promote_at`.
+ * Redis is only read when the window advances, every half window. Delayed jobs saved by this
+ * Kue instance within the loaded window go straight into the wheel. With `job.promotion.cluster`,
+ * the other instances send the jobs they delay over the event bus to the elected promoter, which
+ * adds them to its wheel too. Each refill also promotes up to `job.promotion.limit` overdue jobs
+ * the wheel missed. Without the wheel, due jobs are promoted every `job.promotion.interval`
+ * milliseconds.</p>
+ */
+public class JobPromoter {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobPromoter.class);
+
+    private static final LuaScript PROMOTE_SCRIPT = LuaScript.load("promote");
+
+    // event bus address of the elected promoter for jobs delayed by the other instances
+    private static final String SCHEDULE_ADDRESS = "vertx.kue.promoter.schedule";
+
+    private final Kue kue;
+    private final Vertx vertx;
+    private final int limit;
+    private final long interval;
+    private final boolean wheelEnabled;
+    private final boolean cluster;
+    private final long tick;
+    private final int wheelSize;
+    private final long window;
+    private final int windowLimit;
+
+    private final List<Long> timers = new ArrayList<>();
+    private TimingWheel<String> wheel; // null unless started with the wheel
+    private MessageConsumer<JsonObject> scheduleConsumer;
+    private long loadedUntil; // delayed jobs due up to this time are in the wheel
+    private boolean loading = false;
+
+    public JobPromoter(Kue kue, JsonObject config) {
+        this.kue = kue;
+        this.vertx = kue.getVertx();
+        this.limit = config.getInteger("job.promotion.limit", 1000);
+        this.interval = config.getInteger("job.promotion.interval", 1000);
+        this.wheelEnabled = config.getBoolean("job.promotion.wheel", true);
+        this.cluster = config.getBoolean("job.promotion.cluster", false);
+        this.tick = config.getLong("job.promotion.tick", 10L);
+        this.wheelSize = config.getInteger("job.promotion.wheel.size", 512);
+        this.window = config.getLong("job.promotion.window", 5000L);
+        this.windowLimit = config.getInteger("job.promotion.window.limit", 10000);
+    }
+
+    /**
+     * Start promoting due jobs. Called by the promoting Kue instance.
+     */
+    public synchronized void start() {
+        if (!timers.isEmpty()) {
+            return;
+        }
+        if (!wheelEnabled) {
+            timers.add(vertx.setPeriodic(interval, l -> {
+                logger.trace("Checking for delayed jobs");
+                promote().onFailure(ex -> logger.error("Failed to promote delayed jobs", ex));
+            }));
+            return;
+        }
+        long now = System.currentTimeMillis();
+        wheel = new TimingWheel<>(tick, wheelSize, now);
+        loadedUntil = now;
+        if (cluster) {
+            scheduleConsumer = vertx.eventBus().consumer(SCHEDULE_ADDRESS, msg ->
+                    add(msg.body().getString("zid"), msg.body().getLong("promote_at")));
+        }
+        timers.add(vertx.setPeriodic(tick, l -> fire()));
+        timers.add(vertx.setPeriodic(Math.max(tick, window / 2), l -> refill()));
+        refill();
+    }
+
+    /**
+     * Stop promoting due jobs.
+     */
+    public synchronized void stop() {
+        timers.forEach(vertx::cancelTimer);
+        timers.clear();
+        wheel = null;
+        if (scheduleConsumer != null) {
+            scheduleConsumer.unregister();
+            scheduleConsumer = null;
+        }
+    }
+
+    /**
+     * Hand a job that has just been delayed by this instance to the wheel if its promotion
+     * time falls within the loaded window; later jobs are loaded when the window advances.
+     * An instance that is not the cluster-wide promoter sends the job to the promoter instead.
+     *
+     * @param zid       job zid
+     * @param promoteAt promotion time
+     */
+    public void schedule(String zid, long promoteAt) {
+        boolean local;
+        synchronized (this) {
+            local = wheel != null;
+        }
+        if (local) {
+            add(zid, promoteAt);
+        } else if (cluster && wheelEnabled && promoteAt <= System.currentTimeMillis() + window) {
+            vertx.eventBus().send(SCHEDULE_ADDRESS, new JsonObject().put("zid", zid).put("promote_at", promoteAt));
+        }
+    }
+
+    private void add(String zid, long promoteAt) {
+        boolean due;
+        synchronized (this) {
+            if (wheel == null || promoteAt > loadedUntil) {
+                return;
+            }
+            due = !wheel.add(promoteAt, zid);
+        }
+        if (due) {
+            promote(Collections.singletonList(zid));
+        }
+    }
+
+    /**
+     * Promote up to `job.promotion.limit` jobs that are due now and emit their `promotion` event.
+     *
+     * @return async result of the ids of the promoted jobs
+     */
+    public Future<List<Long>> promote() {
+        return promote(Collections.emptyList());
+    }
+
+    /**
+     * Promote the given jobs if they are still delayed and due, and emit their `promotion` event.
+     *
+     * @param zids zids of the jobs; if empty, up to `job.promotion.limit` due jobs are looked up
+     * @return async result of the ids of the promoted jobs
+     */
+    private Future<List<Long>> promote(List<String> zids) {
+        List<String> keys = Arrays.asList(
+                RedisHelper.getStateKey(JobState.DELAYED),
+                RedisHelper.getStateKey(JobState.INACTIVE));
+        List<String> args = new ArrayList<>(Arrays.asList(
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(limit),
+                RedisHelper.getKey("")));
+        args.addAll(zids);
+        return PROMOTE_SCRIPT.eval(kue.getClient(), keys, args).map(r -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i + 2 < r.size(); i += 3) {
+                long id = r.get(i).toLong();
+                String type = r.get(i + 1).toString();
+                Response addressId = r.get(i + 2);
+                logger.info("Promoted delayed job: " + id);
+                if (addressId != null) {
+                    vertx.eventBus().send(Kue.getCertainJobAddress("promotion", addressId.toString(), type), id);
+                }
+                ids.add(id);
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Promote the jobs of the wheel whose time has come, in chunks of `job.promotion.limit`.
+     */
+    private void fire() {
+        List<String> due = new ArrayList<>();
+        synchronized (this) {
+            if (wheel == null) {
+                return;
+            }
+            wheel.advance(System.currentTimeMillis(), due::add);
+        }
+        for (int i = 0; i < due.size(); i += limit) {
+            promote(due.subList(i, Math.min(due.size(), i + limit)))
+                    .onFailure(ex -> logger.error("Failed to promote delayed jobs", ex));
+        }
+    }
+
+    /**
+     * Promote overdue jobs missed by the wheel, then load the next part of the window.
+     */
+    private void refill() {
+        promote().onComplete(r -> {
+            if (r.failed()) {
+                logger.error("Failed to promote overdue jobs", r.cause());
+            }
+            load();
+        });
+    }
+
+    private void load() {
+        long from;
+        long to;
+        synchronized (this) {
+            if (loading || wheel == null) {
+                return;
+            }
+            loading = true;
+            from = loadedUntil;
+            to = System.currentTimeMillis() + window;
+        }
+        kue.getRedisAPI().zrangebyscore(Arrays.asList(RedisHelper.getStateKey(JobState.DELAYED),
+                "(" + from, String.valueOf(to), "WITHSCORES", "LIMIT", "0", String.valueOf(windowLimit)), r -> {
+            List<String> due = new ArrayList<>();
+            boolean more = false;
+            synchronized (this) {
+                loading = false;
+                if (r.failed()) {
+                    logger.error("Failed to load delayed jobs", r.cause());
+                    return;
+                }
+                if (wheel == null) {
+                    return;
+                }
+                Response res = r.result();
+                int count = 0;
+                long last = from;
+                for (int i = 0; i < res.size(); i++, count++) {
+                    String zid;
+                    Response it = res.get(i);
+                    if (it.type() == ResponseType.MULTI) { // RESP3 member/score pairs
+                        zid = it.get(0).toString();
+                        last = it.get(1).toDouble().longValue();
+                    } else {
+                        zid = it.toString();
+                        last = res.get(++i).toDouble().longValue();
+                    }
+                    if (!wheel.add(last, zid)) {
+                        due.add(zid);
+                    }
+                }
+                if (count < windowLimit) {
+                    loadedUntil = to;
+                } else {
+                    // load the rest right away; jobs sharing the last score may be loaded twice,
+                    // which is harmless as the promote script only promotes delayed jobs
+                    loadedUntil = last - 1 > from ? last - 1 : last;
+                    more = true;
+                }
+            }
+            if (!due.isEmpty()) {
+                promote(due).onFailure(ex -> logger.error("Failed to promote delayed jobs", ex));
+            }
+            if (more) {
+                load();
+            }
+        });
+    }
+}
@@ -4,6 +4,7 @@ import io.vertx.blueprint.kue.Kue;
 import io.vertx.blueprint.kue.service.JobService;
 import io.vertx.blueprint.kue.service.impl.JobServiceImpl;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Promise;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -46,11 +47,16 @@ public class KueVerticle extends AbstractVerticle {
     }
 
     @Override
-    public void stop() {
+    public void stop(Promise<Void> future) {
         logger.debug("Closing Kue");
         kue.setClosed(true);
-        kue.getClient().close();
-        logger.info("Closed Kue");
+        kue.getLeases().close();
+        kue.getWorkStats().close();
+        CompositeFuture.join(kue.getDispatcher().close(), kue.getWorkStats().flush()).onComplete(r -> {
+            kue.getClient().close();
+            logger.info("Closed Kue");
+            future.complete();
+        });
     }
 
     private void testConnection(Promise<Void> future) {
@@ -1,24 +1,19 @@
 package io.vertx.blueprint.kue.queue;
 
 import io.vertx.blueprint.kue.Kue;
-import io.vertx.blueprint.kue.util.RedisHelper;
 import io.vertx.core.*;
 import io.vertx.core.eventbus.EventBus;
-import io.vertx.core.eventbus.MessageConsumer;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
-import io.vertx.redis.client.RedisAPI;
-import io.vertx.redis.client.RedisConnection;
-import io.vertx.redis.client.ResponseType;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * The verticle for processing Kue tasks.
+ * <p>One worker runs up to `concurrency` jobs of its type at the same time, so a
+ * high concurrency does not need one deployment per job slot.</p>
  *
  * @author Eric Zhao
  */
@@ -27,107 +22,214 @@ public class KueWorker extends AbstractVerticle {
     private static final Logger logger = LoggerFactory.getLogger(KueWorker.class);
 
     private final Kue kue;
-    private RedisConnection localClient; //todo: remove?
-    private RedisAPI client; // Every worker use different clients.
     private EventBus eventBus;
-    private Job job;
     private final String type;
+    private int concurrency;
+    private final AdaptiveConcurrency adaptive;
+    private final boolean blocking;
+    private final Executor executor;
+    private final WeightedScheduler scheduler;
     private final Handler<Job> jobHandler;
+    private boolean stopped = false;
+    private long adjustTimer = -1;
 
-    private MessageConsumer<JsonObject> doneConsumer; // Preserve for unregister the consumer.
-    private MessageConsumer<String> doneFailConsumer;
+    private int inFlight = 0; // jobs being processed
+    private int taking = 0; // jobs requested from the dispatcher
+    // start time of the jobs in flight by address id
+    private final Map<String, Long> processing = new HashMap<>();
 
     public KueWorker(String type, Handler<Job> jobHandler, Kue kue) {
+        this(type, 1, false, jobHandler, kue);
+    }
+
+    /**
+     * Create a worker that processes up to `concurrency` jobs of the given type at the same time.
+     *
+     * @param type        job type
+     * @param concurrency max number of jobs in flight
+     * @param blocking    whether the handler may block; it then runs on the worker pool
+     * @param jobHandler  job process handler
+     * @param kue         kue instance
+     */
+    public KueWorker(String type, int concurrency, boolean blocking, Handler<Job> jobHandler, Kue kue) {
+        this(type, concurrency, null, blocking, null, null, jobHandler, kue);
+    }
+
+    /**
+     * Create a worker whose slots are shared by several job types, taking jobs from the given
+     * weighted scheduler instead of the per-type dispatcher.
+     *
+     * @param scheduler   weighted scheduler of the job types
+     * @param concurrency max number of jobs in flight
+     * @param blocking    whether the handler may block; it then runs on the worker pool
+     * @param jobHandler  job process handler
+     * @param kue         kue instance
+     */
+    public KueWorker(WeightedScheduler scheduler, int concurrency, boolean blocking, Handler<Job> jobHandler, Kue kue) {
+        this(String.join(",", scheduler.getTypes()), concurrency, null, blocking, null, scheduler, jobHandler, kue);
+    }
+
+    /**
+     * Create a worker whose number of jobs in flight is adjusted by the given controller,
+     * from the handler latency, the error rate and the backlog of the job type.
+     *
+     * @param type       job type
+     * @param adaptive   concurrency controller
+     * @param blocking   whether the handler may block; it then runs on the worker pool
+     * @param jobHandler job process handler
+     * @param kue        kue instance
+     */
+    public KueWorker(String type, AdaptiveConcurrency adaptive, boolean blocking, Handler<Job> jobHandler, Kue kue) {
+        this(type, adaptive.getLimit(), adaptive, blocking, null, null, jobHandler, kue);
+    }
+
+    /**
+     * Create a worker whose handler runs on the given executor, e.g. one virtual thread per job.
+     * The concurrency is the only limit on the number of handlers running at the same time.
+     *
+     * @param type        job type
+     * @param concurrency max number of jobs in flight
+     * @param executor    executor running the handler
+     * @param jobHandler  job process handler
+     * @param kue         kue instance
+     */
+    public KueWorker(String type, int concurrency, Executor executor, Handler<Job> jobHandler, Kue kue) {
+        this(type, concurrency, null, true, executor, null, jobHandler, kue);
+    }
+
+    private KueWorker(String type, int concurrency, AdaptiveConcurrency adaptive, boolean blocking,
+                      Executor executor, WeightedScheduler scheduler, Handler<Job> jobHandler, Kue kue) {
         this.type = type;
+        this.concurrency = concurrency;
+        this.adaptive = adaptive;
+        this.blocking = blocking;
+        this.executor = executor;
+        this.scheduler = scheduler;
         this.jobHandler = jobHandler;
         this.kue = kue;
     }
 
     @Override
-    public void start(Promise<Void> startFuture) {
+    public void start() {
         this.eventBus = vertx.eventBus();
-        RedisHelper.client(vertx, config()).connect(it -> {
-            if (it.succeeded()) {
-                this.localClient = it.result();
-                this.client = RedisAPI.api(localClient);
-                prepareAndStart();
+        if (adaptive != null) {
+            adjustTimer = vertx.setPeriodic(adaptive.getInterval(), l -> adjustConcurrency());
+        }
+        prepareAndStart();
+    }
 
-                startFuture.complete();
-            } else {
-                startFuture.fail(it.cause());
+    /**
+     * Let the concurrency controller adjust the number of jobs in flight from the current backlog.
+     * Lowering the limit takes effect as jobs finish; raising it takes new jobs right away.
+     */
+    private void adjustConcurrency() {
+        kue.inactiveCount(type).onComplete(r -> context.runOnContext(v -> {
+            if (r.failed() || stopped) {
+                return;
             }
-        });
+            int old = concurrency;
+            concurrency = adaptive.adjust(r.result(), inFlight);
+            if (concurrency != old) {
+                logger.debug(String.format("KueWorker concurrency changed. Job type: %s - %d -> %d", type, old, concurrency));
+                prepareAndStart();
+            }
+        }));
     }
 
     /**
-     * Prepare job and start processing procedure.
+     * Prepare jobs and start processing procedure, taking as many jobs as there are free slots.
+     * Jobs are taken from the dispatcher of the Kue instance, which shares its blocking
+     * Redis connections between all workers of the same job type, or from the weighted
+     * scheduler of a pool shared by several types.
      */
     private void prepareAndStart() {
-        cleanup();
-        getJobFromBackend().onComplete(jr -> {
-            if (jr.succeeded()) {
-                if (jr.result().isPresent()) {
-                    job = jr.result().get();
-                    job.setLocalClient(client);
-
+        while (!stopped && inFlight + taking < concurrency) {
+            taking++;
+            Future<Job> next = scheduler != null ? scheduler.take() : kue.getDispatcher().take(type);
+            next.onComplete(jr -> context.runOnContext(v -> {
+                taking--;
+                if (jr.succeeded()) {
+                    Job job = jr.result();
+                    if (stopped) { // undeployed while waiting, hand the job back
+                        job.inactive();
+                        return;
+                    }
+                    inFlight++;
+                    if (adaptive != null) {
+                        adaptive.inFlight(inFlight);
+                    }
                     logger.info("Got job from backend. Job id: " + job.getId());
-                    process();
+                    process(job);
                 } else {
-                    emitJobEvent("error", null, new JsonObject().put("message", "job_not_exist"));
-                    throw new IllegalStateException("job not exist");
+                    emitJobEvent("error", null, new JsonObject().put("message", jr.cause().getMessage()));
+                    jr.cause().printStackTrace();
+                    vertx.setTimer(1000, l -> prepareAndStart());
                 }
-            } else {
-                emitJobEvent("error", null, new JsonObject().put("message", jr.cause().getMessage()));
-                jr.cause().printStackTrace();
-            }
-        });
+            }));
+        }
     }
 
     /**
-     * Process the job.
+     * Process the job. The job has already been moved to ACTIVE by the claim script.
      */
-    private void process() {
+    private void process(Job job) {
         logger.info("Processing job. Job id: " + job.getId());
-        Context vertxContext = vertx.getOrCreateContext();
-        long curTime = System.currentTimeMillis();
-        this.job.setStarted_at(curTime)
-                .set("started_at", String.valueOf(curTime))
-                .compose(Job::active)
-                .onComplete(r -> {
-                    if (r.succeeded()) {
-                        Job j = r.result();
-                        // emit start event
-                        this.emitJobEvent("start", j, null);
+        // emit start event
+        this.emitJobEvent("start", job, null);
 
-                        logger.debug("KueWorker::process[instance:Verticle(" + this.deploymentID() + ")] with job " + job.getId());
-                        // process logic invocation
-                        try {
-                            vertxContext.runOnContext(it -> {
-                                logger.info("Executing job user-logic. Job id: " + job.getId());
-                                jobHandler.handle(j);
-                            });
-                        } catch (Exception ex) {
-                            j.done(ex);
-                        }
+        // the job calls back directly when done; the handler may call it from any thread
+        Handler<AsyncResult<JsonObject>> doneCallback = createDoneCallback(job);
+        Handler<AsyncResult<JsonObject>> onContext = r -> context.runOnContext(v -> doneCallback.handle(r));
+        job.setDoneHandler(onContext);
+        kue.registerDoneHandler(job.getAddress_id(), onContext);
+        processing.put(job.getAddress_id(), System.currentTimeMillis());
 
-                        // subscribe the job done event
-                        doneConsumer = eventBus.consumer(Kue.workerAddress("done", j), msg -> {
-                            createDoneCallback(j).handle(Future.succeededFuture(msg.body().getJsonObject("result")));
-                        });
-                        doneFailConsumer = eventBus.consumer(Kue.workerAddress("done_fail", j), msg -> {
-                            createDoneCallback(j).handle(Future.failedFuture(msg.body()));
-                        });
-                    } else {
-                        this.emitJobEvent("error", this.job, new JsonObject().put("message", r.cause().getMessage()));
-                        r.cause().printStackTrace();
-                    }
-                });
+        logger.debug("KueWorker::process[instance:Verticle(" + this.deploymentID() + ")] with job " + job.getId());
+        // process logic invocation
+        if (executor != null) {
+            executor.execute(() -> {
+                logger.info("Executing job user-logic. Job id: " + job.getId());
+                try {
+                    jobHandler.handle(job);
+                } catch (Throwable ex) {
+                    job.done(ex);
+                }
+            });
+        } else if (blocking) {
+            context.executeBlocking(p -> {
+                logger.info("Executing job user-logic. Job id: " + job.getId());
+                jobHandler.handle(job);
+                p.complete();
+            }, false, r -> {
+                if (r.failed()) {
+                    job.done(r.cause());
+                }
+            });
+        } else {
+            context.runOnContext(it -> {
+                logger.info("Executing job user-logic. Job id: " + job.getId());
+                try {
+                    jobHandler.handle(job);
+                } catch (Exception ex) {
+                    job.done(ex);
+                }
+            });
+        }
     }
 
-    private void cleanup() {
-        Optional.ofNullable(doneConsumer).ifPresent(MessageConsumer::unregister);
-        Optional.ofNullable(doneFailConsumer).ifPresent(MessageConsumer::unregister);
-        this.job = null;
+    /**
+     * Release the slot of a finished job and take the next one.
+     */
+    private void finish(Job job) {
+        cleanup(job);
+        inFlight--;
+        prepareAndStart(); // prepare for next job
+    }
+
+    private void cleanup(Job job) {
+        processing.remove(job.getAddress_id());
+        kue.unregisterDoneHandler(job.getAddress_id());
+        kue.getLeases().unregister(job.getAddress_id());
     }
 
     private void error(Throwable ex, Job job) {
@@ -136,90 +238,21 @@ public class KueWorker extends AbstractVerticle {
         eventBus.send(Kue.workerAddress("error"), err);
     }
 
-    private void fail(Throwable ex) {
+    private void fail(Job job, Throwable ex) {
         job.failedAttempt(ex).onComplete(r -> {
             if (r.failed()) {
                 this.error(r.cause(), job);
             } else {
                 Job res = r.result();
+                kue.getWorkStats().failed(job.getType(), res.hasAttempts());
                 if (res.hasAttempts()) {
                     this.emitJobEvent("failed_attempt", job, new JsonObject().put("message", ex.getMessage())); // shouldn't include err?
                 } else {
                     this.emitJobEvent("failed", job, new JsonObject().put("message", ex.getMessage()));
                 }
             }
-            prepareAndStart();
-        });
-    }
-
-    /**
-     * Redis zpop atomic primitive with transaction.
-     *
-     * @param key redis key
-     * @return the async result of zpop
-     */
-    private Future<Long> zpop(String key) {
-        Promise<Long> promise = Promise.promise();
-        client.zpopmin(Collections.singletonList(key), r -> {
-            if (r.succeeded()) {
-                JsonArray res = new JsonArray();
-                r.result().forEach(it -> {
-                    if (it.type() == ResponseType.MULTI) {
-                        JsonArray innerArray = new JsonArray();
-                        it.forEach(it2 -> {
-                            innerArray.add(it2.toString());
-                        });
-                        res.add(innerArray);
-                    } else {
-                        res.add(it.toString());
-                    }
-                });
-                try {
-                    promise.complete(Long.parseLong(RedisHelper.stripFIFO(res.getString(0))));
-                } catch (Exception ex) {
-                    promise.fail(ex);
-                }
-            } else {
-                promise.fail(r.cause());
-            }
+            finish(job);
         });
-        return promise.future();
-    }
-
-    /**
-     * Get a job from Redis backend by priority.
-     *
-     * @return async result of job
-     */
-    private Future<Optional<Job>> getJobFromBackend() {
-        logger.debug("Getting job from backend");
-        Promise<Optional<Job>> promise = Promise.promise();
-        client.blpop(Arrays.asList(RedisHelper.getKey(String.format("%s:jobs", type)), "0"), r1 -> {
-            if (r1.failed()) {
-                if (!kue.isClosed()) {
-                    client.lpush(Arrays.asList(RedisHelper.getKey(String.format("%s:jobs", type)), "1"), r2 -> {
-                        if (r2.failed()) {
-                            promise.fail(r2.cause());
-                        }
-                    });
-                } else {
-                    logger.info("Prematurely ended looking for backend jobs due to Kue closing");
-                }
-            } else {
-                zpop(RedisHelper.getKey(String.format("jobs:%s:INACTIVE", type)))
-                        .compose(kue::getJob)
-                        .onComplete(r -> {
-                            if (r.succeeded()) {
-                                logger.debug("Successfully fetched job from backend");
-                                promise.complete(r.result());
-                            } else {
-                                logger.error("Failed to fetch job from backend", r.cause());
-                                promise.fail(r.cause());
-                            }
-                        });
-            }
-        });
-        return promise.future();
     }
 
     private Handler<AsyncResult<JsonObject>> createDoneCallback(Job job) {
@@ -228,29 +261,34 @@ public class KueWorker extends AbstractVerticle {
                 // maybe should warn
                 return;
             }
+            Long startedAt = processing.get(job.getAddress_id());
+            if (startedAt == null) {
+                logger.warn("Job already done. Job id: " + job.getId());
+                return;
+            }
+            if (adaptive != null) {
+                adaptive.record(System.currentTimeMillis() - startedAt, r0.failed());
+            }
+            cleanup(job);
             if (r0.failed()) {
-                this.fail(r0.cause());
+                this.fail(job, r0.cause());
                 return;
             }
-            long dur = System.currentTimeMillis() - job.getStarted_at();
-            job.setDuration(dur)
-                    .set("duration", String.valueOf(dur));
+            job.setDuration(System.currentTimeMillis() - startedAt); // excludes the time spent in the buffer
             JsonObject result = r0.result();
             if (result != null) {
-                job.setResult(result)
-                        .set("result", result.encodePrettily());
+                job.setResult(result);
             }
 
+            // duration, result, state and remove-on-complete are committed together
             job.complete().onComplete(r -> {
                 if (r.succeeded()) {
-                    Job j = r.result();
-                    if (j.isRemoveOnComplete()) {
-                        j.remove();
-                    }
-                    this.emitJobEvent("complete", j, null);
-
-                    this.prepareAndStart(); // prepare for next job
+                    kue.getWorkStats().complete(job.getType(), job.getDuration());
+                    this.emitJobEvent("complete", r.result(), null);
+                } else {
+                    this.error(r.cause(), job);
                 }
+                finish(job);
             });
         };
     }
@@ -258,7 +296,17 @@ public class KueWorker extends AbstractVerticle {
     @Override
     public void stop() {
         // stop hook
-        cleanup();
+        stopped = true;
+        if (adjustTimer >= 0) {
+            vertx.cancelTimer(adjustTimer);
+        }
+        if (scheduler != null) {
+            scheduler.close();
+        }
+        // jobs still in flight keep their lease until it expires and the reaper recovers them
+        processing.keySet().forEach(kue::unregisterDoneHandler);
+        processing.keySet().forEach(kue.getLeases()::unregister);
+        processing.clear();
     }
 
     /**
@@ -0,0 +1,139 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.util.CronExpression;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Objects;
+
+/**
+ * Definition of a recurring job, run on a cron schedule or at a fixed interval.
+ * <p>Runs are enqueued as delayed jobs ahead of time by {@link RecurringScheduler}. The name
+ * identifies the definition across the cluster: nodes scheduling a definition with the same
+ * name share its runs, each run being enqueued once.</p>
+ */
+public class RecurringJob {
+
+    /**
+     * What to do with the runs missed while no node was scheduling the definition.
+     */
+    public enum MissedRunPolicy {
+        /**
+         * Skip missed runs and go on with the next future run.
+         */
+        SKIP,
+        /**
+         * Run once right away for all missed runs.
+         */
+        RUN_ONCE,
+        /**
+         * Run every missed run right away, up to `job.recurring.catchup.limit` runs.
+         */
+        RUN_ALL
+    }
+
+    private final String name;
+    private final String type;
+    private final CronExpression cron;
+    private final long interval;
+    private JsonObject data = new JsonObject();
+    private Priority priority = Priority.NORMAL;
+    private int maxAttempts = 1;
+    private MissedRunPolicy missedRunPolicy = MissedRunPolicy.SKIP;
+
+    private RecurringJob(String name, String type, CronExpression cron, long interval) {
+        this.name = Objects.requireNonNull(name, "Recurring job name cannot be null");
+        this.type = Objects.requireNonNull(type, "Job type cannot be null");
+        this.cron = cron;
+        this.interval = interval;
+    }
+
+    /**
+     * Create a recurring job run on a cron schedule.
+     *
+     * @param name       unique name of the definition
+     * @param type       job type
+     * @param expression 5-field cron expression
+     */
+    public static RecurringJob cron(String name, String type, String expression) {
+        return new RecurringJob(name, type, new CronExpression(expression), 0);
+    }
+
+    /**
+     * Create a recurring job run at a fixed interval. Runs are aligned on multiples of the
+     * interval since the epoch, so all nodes agree on them.
+     *
+     * @param name     unique name of the definition
+     * @param type     job type
+     * @param interval interval in milliseconds
+     */
+    public static RecurringJob every(String name, String type, long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive");
+        }
+        return new RecurringJob(name, type, null, interval);
+    }
+
+    /**
+     * Get the first run strictly after the given time.
+     */
+    public long next(long after) {
+        return cron != null ? cron.next(after) : (Math.floorDiv(after, interval) + 1) * interval;
+    }
+
+    /**
+     * Create the job of a run.
+     *
+     * @param runAt time of the run
+     * @param now   current time
+     */
+    Job createJob(long runAt, long now) {
+        return new Job(type, data.copy())
+                .priority(priority)
+                .setMax_attempts(maxAttempts)
+                .setDelay(Math.max(0, runAt - now));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public JsonObject getData() {
+        return data;
+    }
+
+    public RecurringJob setData(JsonObject data) {
+        this.data = data;
+        return this;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    public RecurringJob priority(Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public RecurringJob setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public MissedRunPolicy getMissedRunPolicy() {
+        return missedRunPolicy;
+    }
+
+    public RecurringJob setMissedRunPolicy(MissedRunPolicy missedRunPolicy) {
+        this.missedRunPolicy = missedRunPolicy;
+        return this;
+    }
+}
@@ -0,0 +1,180 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materialises the runs of the {@link RecurringJob}s scheduled on a {@link Kue} instance into
+ * delayed jobs, `job.recurring.horizon` milliseconds ahead of time, so each run costs a single
+ * enqueue and is then promoted like any delayed job.
+ * <p>The time of the last enqueued run of a definition is kept in `vertx_kue:recurring:{name}`.
+ * A run is enqueued together with the compare-and-set of that cursor, in the enqueue script, so
+ * when several nodes schedule the same definition every run is enqueued exactly once. A node
+ * losing the race reads the cursor back and goes on from there.</p>
+ * <p>Runs older than `job.recurring.grace` milliseconds, e.g. after all nodes were down, are
+ * handled according to the {@link RecurringJob.MissedRunPolicy} of the definition.</p>
+ */
+public class RecurringScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecurringScheduler.class);
+
+    private final Kue kue;
+    private final Vertx vertx;
+    private final long horizon;
+    private final long grace;
+    private final int catchUpLimit;
+    private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+
+    public RecurringScheduler(Kue kue, JsonObject config) {
+        this.kue = kue;
+        this.vertx = kue.getVertx();
+        this.horizon = config.getLong("job.recurring.horizon", 60000L);
+        this.grace = config.getLong("job.recurring.grace", 5000L);
+        this.catchUpLimit = config.getInteger("job.recurring.catchup.limit", 100);
+    }
+
+    /**
+     * Start scheduling the runs of a recurring job, replacing a local definition with the same name.
+     *
+     * @param job recurring job definition
+     */
+    public void schedule(RecurringJob job) {
+        Schedule schedule = new Schedule(job);
+        Schedule old = schedules.put(job.getName(), schedule);
+        if (old != null) {
+            old.cancel();
+        }
+        schedule.resume();
+    }
+
+    /**
+     * Stop scheduling the runs of a recurring job on this instance. Runs already enqueued are kept.
+     *
+     * @param name recurring job name
+     */
+    public void cancel(String name) {
+        Schedule schedule = schedules.remove(name);
+        if (schedule != null) {
+            schedule.cancel();
+        }
+    }
+
+    /**
+     * Stop scheduling all recurring jobs.
+     */
+    public void stop() {
+        schedules.values().forEach(Schedule::cancel);
+        schedules.clear();
+    }
+
+    private static String cursorKey(String name) {
+        return RedisHelper.getKey("recurring:" + name);
+    }
+
+    /**
+     * Scheduling state of one definition.
+     */
+    private final class Schedule {
+
+        private final RecurringJob job;
+        private volatile boolean cancelled = false;
+        private long timer = -1;
+
+        private Schedule(RecurringJob job) {
+            this.job = job;
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (timer >= 0) {
+                vertx.cancelTimer(timer);
+            }
+        }
+
+        /**
+         * Read the cursor and go on from the last enqueued run.
+         */
+        private void resume() {
+            if (cancelled) {
+                return;
+            }
+            kue.getRedisAPI().get(cursorKey(job.getName()), r -> {
+                if (r.failed()) {
+                    logger.error("Failed to read the cursor of recurring job: " + job.getName(), r.cause());
+                    later(1000);
+                } else {
+                    advance(r.result() == null ? null : r.result().toLong(), 0);
+                }
+            });
+        }
+
+        /**
+         * Enqueue the next run if it is within the horizon, else wait until it is.
+         *
+         * @param last    time of the last enqueued run, null if there is none
+         * @param catchUp number of missed runs enqueued so far
+         */
+        private void advance(Long last, int catchUp) {
+            if (cancelled) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long runAt = job.next(last == null ? now : last);
+            long cursor = runAt;
+            if (runAt < now - grace) { // missed runs
+                RecurringJob.MissedRunPolicy policy = job.getMissedRunPolicy();
+                if (policy == RecurringJob.MissedRunPolicy.RUN_ALL && catchUp >= catchUpLimit) {
+                    policy = RecurringJob.MissedRunPolicy.SKIP;
+                }
+                switch (policy) {
+                    case RUN_ALL:
+                        catchUp++;
+                        break;
+                    case RUN_ONCE:
+                        while (job.next(cursor) <= now) {
+                            cursor = job.next(cursor);
+                        }
+                        runAt = now;
+                        break;
+                    default:
+                        runAt = job.next(now);
+                        cursor = runAt;
+                }
+            }
+            if (runAt > now + horizon) {
+                later(runAt - horizon - now);
+                return;
+            }
+            String expected = last == null ? "" : String.valueOf(last);
+            long next = cursor;
+            int caughtUp = catchUp;
+            Future<Boolean> saved = job.createJob(runAt, now)
+                    .saveGuarded(cursorKey(job.getName()), expected, String.valueOf(next));
+            saved.onComplete(r -> {
+                if (r.failed()) {
+                    logger.error("Failed to enqueue recurring job: " + job.getName(), r.cause());
+                    later(1000);
+                } else if (r.result()) {
+                    logger.debug("Enqueued recurring job: " + job.getName() + " - Run: " + next);
+                    advance(next, caughtUp);
+                } else { // enqueued by another node
+                    resume();
+                }
+            });
+        }
+
+        private synchronized void later(long delay) {
+            if (!cancelled) {
+                timer = vertx.setTimer(Math.max(1, delay), l -> resume());
+            }
+        }
+    }
+}
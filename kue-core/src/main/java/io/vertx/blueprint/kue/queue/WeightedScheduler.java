@@ -0,0 +1,278 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.RedisConnection;
+import io.vertx.redis.client.Request;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Hands out jobs of several types to one shared pool of worker slots, following the weight
+ * of each type with deficit round robin.
+ * <p>Types are visited in turn. Each visit credits the type with its weight and claims as many
+ * jobs as its credit allows (bounded by the number of waiting slots) with the claim script.
+ * Credit left over when the slots are filled is kept for the next call; a type that runs out
+ * of jobs loses its credit. Under contention each type thus gets a share of the pool
+ * proportional to its weight, while capacity of an idle type goes to the others. When no type
+ * has jobs, the scheduler waits with one BLPOP on the wake-up sentinels of all its types.</p>
+ * <p>A type held back by its rate or concurrency limit counts as empty and is left out of the
+ * BLPOP until the claim script lets it through again.</p>
+ */
+public class WeightedScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeightedScheduler.class);
+
+    private final Kue kue;
+    private final Vertx vertx;
+    private final JsonObject config;
+    private final int blockTimeout;
+    private final List<String> types = new ArrayList<>();
+    private final int[] weights;
+    private final int[] deficits;
+    private final Map<String, Integer> sentinelKeys = new HashMap<>();
+
+    private final Deque<Promise<Job>> waiters = new ArrayDeque<>();
+    private int current = 0;
+    private boolean credited = false; // whether the current type got its weight for this visit
+    private boolean running = false; // a scheduling round or a blocking pop is in progress
+    private RedisConnection conn;
+    private volatile boolean closed = false;
+
+    public WeightedScheduler(Kue kue, Map<String, Integer> weights, JsonObject config) {
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("No job type to schedule");
+        }
+        this.kue = kue;
+        this.vertx = kue.getVertx();
+        this.config = config;
+        this.blockTimeout = Math.max(1, config.getInteger("job.dispatcher.timeout", 5)); // seconds
+        this.weights = new int[weights.size()];
+        this.deficits = new int[weights.size()];
+        weights.forEach((type, weight) -> {
+            if (weight == null || weight <= 0) {
+                throw new IllegalArgumentException("The weight of job type " + type + " must be positive");
+            }
+            this.weights[types.size()] = weight;
+            sentinelKeys.put(RedisHelper.getKey(type + ":jobs"), types.size());
+            types.add(type);
+        });
+    }
+
+    public List<String> getTypes() {
+        return Collections.unmodifiableList(types);
+    }
+
+    /**
+     * Take the next job of any of the scheduled types. The job is already ACTIVE when handed out.
+     *
+     * @return async result of the job
+     */
+    public Future<Job> take() {
+        Promise<Job> promise = Promise.promise();
+        synchronized (this) {
+            waiters.add(promise);
+        }
+        schedule();
+        return promise.future();
+    }
+
+    /**
+     * Close the blocking connection. Jobs are not claimed any more.
+     */
+    public Future<Void> close() {
+        closed = true;
+        RedisConnection c;
+        synchronized (this) {
+            c = conn;
+            conn = null;
+        }
+        if (c != null) {
+            c.close();
+        }
+        return Future.succeededFuture();
+    }
+
+    private void schedule() {
+        synchronized (this) {
+            if (running || closed || waiters.isEmpty()) {
+                return;
+            }
+            running = true;
+        }
+        visit(0);
+    }
+
+    /**
+     * Visit the current type.
+     *
+     * @param idle number of types visited in a row without finding a job
+     */
+    private void visit(int idle) {
+        int want;
+        int index;
+        synchronized (this) {
+            want = waiters.size();
+            if (closed || want == 0) {
+                running = false;
+                return;
+            }
+            index = current;
+            if (!credited) {
+                deficits[index] += weights[index];
+                credited = true;
+            }
+        }
+        if (idle >= types.size()) { // every type is empty
+            block();
+            return;
+        }
+        final int i = index;
+        final int count = Math.min(deficits[i], want);
+        if (kue.getDispatcher().throttled(types.get(i)) > 0) {
+            synchronized (this) {
+                deficits[i] = 0;
+                current = (i + 1) % types.size();
+                credited = false;
+            }
+            visit(idle + 1);
+            return;
+        }
+        kue.getDispatcher().claim(types.get(i), count, 0).onComplete(r -> {
+            if (r.failed()) {
+                logger.error("Failed to claim jobs of type: " + types.get(i), r.cause());
+                synchronized (this) {
+                    running = false;
+                }
+                vertx.setTimer(1000, l -> schedule());
+                return;
+            }
+            List<Job> jobs = r.result();
+            synchronized (this) {
+                deficits[i] -= jobs.size();
+                if (jobs.size() < count) { // no more jobs of this type
+                    deficits[i] = 0;
+                }
+                if (deficits[i] <= 0) {
+                    current = (i + 1) % types.size();
+                    credited = false;
+                }
+            }
+            deliver(jobs);
+            visit(jobs.isEmpty() ? idle + 1 : 0);
+        });
+    }
+
+    /**
+     * Wait for a wake-up sentinel of any of the types that are not throttled, then claim a job
+     * of that type. Wait no longer than the shortest throttle, so throttled types get visited again.
+     */
+    private void block() {
+        long timeout = blockTimeout * 1000L;
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sentinelKeys.entrySet()) {
+            long wait = kue.getDispatcher().throttled(types.get(entry.getValue()));
+            if (wait > 0) {
+                timeout = Math.min(timeout, wait);
+            } else {
+                keys.add(entry.getKey());
+            }
+        }
+        if (keys.isEmpty()) { // every type is over its rate limit
+            vertx.setTimer(timeout, l -> visit(0));
+            return;
+        }
+        final long seconds = Math.max(1, (timeout + 999) / 1000);
+        withConnection(c -> {
+            Request request = Request.cmd(Command.BLPOP);
+            keys.forEach(request::arg);
+            request.arg(String.valueOf(seconds));
+            c.send(request, r -> {
+                if (closed || kue.isClosed()) {
+                    return;
+                }
+                if (r.failed()) {
+                    logger.error("Failed to wait for jobs of types: " + types, r.cause());
+                    synchronized (this) {
+                        if (conn == c) {
+                            conn = null;
+                        }
+                    }
+                    c.close();
+                    retryLater();
+                } else if (r.result() == null) { // timed out
+                    visit(0);
+                } else {
+                    String type = types.get(sentinelKeys.get(r.result().get(0).toString()));
+                    kue.getDispatcher().claim(type, 1, 1).onComplete(cr -> {
+                        if (cr.succeeded()) {
+                            deliver(cr.result());
+                        } else {
+                            logger.error("Failed to claim jobs of type: " + type, cr.cause());
+                        }
+                        visit(0);
+                    });
+                }
+            });
+        });
+    }
+
+    private void withConnection(Consumer<RedisConnection> action) {
+        RedisConnection c;
+        synchronized (this) {
+            c = conn;
+        }
+        if (c != null) {
+            action.accept(c);
+            return;
+        }
+        RedisHelper.client(vertx, config).connect(r -> {
+            if (r.succeeded()) {
+                synchronized (this) {
+                    conn = r.result();
+                }
+                if (closed) {
+                    r.result().close();
+                } else {
+                    action.accept(r.result());
+                }
+            } else {
+                logger.error("Failed to open scheduler connection", r.cause());
+                retryLater();
+            }
+        });
+    }
+
+    private void retryLater() {
+        synchronized (this) {
+            running = false;
+        }
+        vertx.setTimer(1000, l -> schedule());
+    }
+
+    private void deliver(List<Job> jobs) {
+        for (Job job : jobs) {
+            Promise<Job> promise;
+            synchronized (this) {
+                promise = waiters.poll();
+            }
+            if (promise == null) { // cannot happen as at most as many jobs as waiters are claimed
+                job.inactive();
+            } else if (kue.getLeases().handOut(job)) {
+                promise.complete(job);
+            } else {
+                synchronized (this) {
+                    waiters.addFirst(promise);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.blueprint.kue.Kue;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Request;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Work statistics of the local workers of a {@link Kue} instance.
+ * <p>Workers record completions (with their duration) and failures in memory; every
+ * `job.stats.interval` ms (1000 by default) the totals gathered since the last flush are added
+ * to Redis in one pipelined batch: the queue work time to `stats:work-time`, and work time,
+ * completions, failed attempts and failures of each type to the hash `stats:{type}`.</p>
+ */
+public class WorkStats {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkStats.class);
+
+    private static final String WORK_TIME = "work-time";
+    private static final String COMPLETE = "complete";
+    private static final String FAILED_ATTEMPT = "failed_attempt";
+    private static final String FAILED = "failed";
+
+    private final Kue kue;
+    private final Vertx vertx;
+    private final long interval;
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private long flushTimer = -1;
+    private boolean closed = false;
+
+    public WorkStats(Kue kue, JsonObject config) {
+        this.kue = kue;
+        this.vertx = kue.getVertx();
+        this.interval = Math.max(1, config.getLong("job.stats.interval", 1000L));
+    }
+
+    /**
+     * Record a completed job.
+     *
+     * @param type     job type
+     * @param duration processing time in ms
+     */
+    public void complete(String type, long duration) {
+        Counters c = counters(type);
+        c.workTime.add(duration);
+        c.complete.increment();
+    }
+
+    /**
+     * Record a failed job.
+     *
+     * @param type        job type
+     * @param hasAttempts whether the job will be attempted again
+     */
+    public void failed(String type, boolean hasAttempts) {
+        Counters c = counters(type);
+        if (hasAttempts) {
+            c.failedAttempt.increment();
+        } else {
+            c.failed.increment();
+        }
+    }
+
+    /**
+     * Add the totals recorded since the last flush to Redis, in one pipelined batch.
+     */
+    public Future<Void> flush() {
+        List<Request> requests = new ArrayList<>();
+        long workTime = 0;
+        for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+            String key = RedisHelper.getKey("stats:" + entry.getKey());
+            Counters c = entry.getValue();
+            long typeWorkTime = c.workTime.sumThenReset();
+            workTime += typeWorkTime;
+            add(requests, key, WORK_TIME, typeWorkTime);
+            add(requests, key, COMPLETE, c.complete.sumThenReset());
+            add(requests, key, FAILED_ATTEMPT, c.failedAttempt.sumThenReset());
+            add(requests, key, FAILED, c.failed.sumThenReset());
+        }
+        if (workTime > 0) {
+            requests.add(Request.cmd(Command.INCRBY)
+                    .arg(RedisHelper.getKey("stats:work-time"))
+                    .arg(String.valueOf(workTime)));
+        }
+        if (requests.isEmpty()) {
+            return Future.succeededFuture();
+        }
+        Promise<Void> future = Promise.promise();
+        kue.getClient().batch(requests, r -> {
+            if (r.succeeded()) {
+                future.complete();
+            } else {
+                logger.error("Failed to flush work statistics", r.cause());
+                future.fail(r.cause());
+            }
+        });
+        return future.future();
+    }
+
+    /**
+     * Stop flushing periodically. Call {@link #flush()} afterwards to write the last totals.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (flushTimer >= 0) {
+            vertx.cancelTimer(flushTimer);
+            flushTimer = -1;
+        }
+    }
+
+    private void add(List<Request> requests, String key, String field, long value) {
+        if (value != 0) {
+            requests.add(Request.cmd(Command.HINCRBY).arg(key).arg(field).arg(String.valueOf(value)));
+        }
+    }
+
+    private Counters counters(String type) {
+        Counters c = counters.get(type);
+        if (c == null) {
+            c = counters.computeIfAbsent(type, t -> new Counters());
+            synchronized (this) {
+                if (flushTimer < 0 && !closed) {
+                    flushTimer = vertx.setPeriodic(interval, l -> flush());
+                }
+            }
+        }
+        return c;
+    }
+
+    private static final class Counters {
+        private final LongAdder workTime = new LongAdder();
+        private final LongAdder complete = new LongAdder();
+        private final LongAdder failedAttempt = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+    }
+}
@@ -64,6 +64,25 @@ public interface JobService {
     @Fluent
     JobService getJob(long id, Handler<AsyncResult<Job>> handler);
 
+    /**
+     * Get several jobs from backend by id in one pipelined batch.
+     * Jobs that no longer exist are omitted; the others keep the order of the given ids.
+     *
+     * @param ids     job ids
+     * @param handler async result handler
+     */
+    @Fluent
+    JobService getJobs(List<Long> ids, Handler<AsyncResult<List<Job>>> handler);
+
+    /**
+     * Save many new jobs in one pipelined batch.
+     *
+     * @param jobs    new jobs to save
+     * @param handler async result handler; receives the assigned ids in the order of the given jobs
+     */
+    @Fluent
+    JobService saveAll(List<Job> jobs, Handler<AsyncResult<List<Long>>> handler);
+
     /**
      * Remove a job by id.
      *
@@ -116,6 +135,20 @@ public interface JobService {
     @Fluent
     JobService jobRangeByType(String type, String state, long from, long to, String order, Handler<AsyncResult<List<Job>>> handler);
 
+    /**
+     * Get a page of jobs after a cursor. Unlike rank ranges, pages stay consistent while jobs
+     * move between states, and every page costs the same however deep it is.
+     *
+     * @param type    job type; if null, jobs of all types
+     * @param state   job state; if null, jobs in all states (then `type` must be null too)
+     * @param cursor  `next` cursor of the previous page, or null for the first page
+     * @param count   page size
+     * @param order   page order (asc, desc)
+     * @param handler async result handler; receives `jobs` and the `next` cursor (null after the last page)
+     */
+    @Fluent
+    JobService jobPage(String type, String state, String cursor, int count, String order, Handler<AsyncResult<JsonObject>> handler);
+
     /**
      * Get a list of job in range (from, to) with order.
      *
@@ -130,7 +163,8 @@ public interface JobService {
     // Runtime cardinality metrics
 
     /**
-     * Get cardinality by job type and state.
+     * Get cardinality by job type and state. The inactive jobs include the ones parked behind
+     * a busy concurrency key.
      *
      * @param type    job type
      * @param state   job state
@@ -167,6 +201,7 @@ public interface JobService {
 
     /**
      * Get cardinality of inactive jobs.
+     * Jobs parked behind a busy concurrency key are counted too.
      *
      * @param type job type; if null, then return global metrics
      */
@@ -213,4 +248,23 @@ public interface JobService {
      */
     @Fluent
     JobService getWorkTime(Handler<AsyncResult<Long>> handler);
+
+    /**
+     * Get queue statistics in one round trip: the work time and the number of jobs in each state
+     * (`workTime`, `inactiveCount`, `completeCount`, `activeCount`, `failedCount`, `delayedCount`).
+     *
+     * @param handler async result handler
+     */
+    @Fluent
+    JobService getStats(Handler<AsyncResult<JsonObject>> handler);
+
+    /**
+     * Get the number of jobs of every type in every state, read in one pipelined batch.
+     * The result maps each job type to an object mapping each state (lower case) to its count.
+     * The inactive jobs include the ones parked behind a busy concurrency key.
+     *
+     * @param handler async result handler
+     */
+    @Fluent
+    JobService getStatsByType(Handler<AsyncResult<JsonObject>> handler);
 }
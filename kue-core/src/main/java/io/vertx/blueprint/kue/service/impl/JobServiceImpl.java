@@ -2,8 +2,10 @@ package io.vertx.blueprint.kue.service.impl;
 
 import io.vertx.blueprint.kue.Kue;
 import io.vertx.blueprint.kue.queue.Job;
+import io.vertx.blueprint.kue.queue.JobDispatcher;
 import io.vertx.blueprint.kue.queue.JobState;
 import io.vertx.blueprint.kue.service.JobService;
+import io.vertx.blueprint.kue.util.LuaScript;
 import io.vertx.blueprint.kue.util.RedisHelper;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
@@ -16,6 +18,7 @@ import io.vertx.core.logging.LoggerFactory;
 import io.vertx.redis.client.Command;
 import io.vertx.redis.client.RedisAPI;
 import io.vertx.redis.client.Request;
+import io.vertx.redis.client.Response;
 import io.vertx.redis.client.impl.types.MultiType;
 
 import java.util.*;
@@ -31,6 +34,11 @@ public final class JobServiceImpl implements JobService {
 
     private static final Logger logger = LoggerFactory.getLogger(JobServiceImpl.class);
 
+    private static final LuaScript PAGE_SCRIPT = LuaScript.load("page");
+
+    private static final JobState[] STATS_STATES = {
+            JobState.INACTIVE, JobState.COMPLETE, JobState.ACTIVE, JobState.FAILED, JobState.DELAYED};
+
     private final Kue kue;
     private final Vertx vertx;
     private final JsonObject config;
@@ -58,20 +66,10 @@ public final class JobServiceImpl implements JobService {
 
     @Override
     public JobService getJob(long id, Handler<AsyncResult<Job>> handler) {
-        String zid = RedisHelper.createFIFO(id);
         client.hgetall(RedisHelper.getKey("job:" + id), r -> {
             if (r.succeeded()) {
                 try {
-                    JsonObject result = new JsonObject(toMap((Arrays.asList(Arrays.asList(StreamSupport
-                            .stream(r.result().spliterator(), false).toArray()).toArray(new MultiType[0])))));
-                    if (!result.containsKey("id")) {
-                        handler.handle(Future.succeededFuture());
-                    } else {
-                        Job job = new Job(result);
-                        job.setId(id);
-                        job.setZid(zid);
-                        handler.handle(Future.succeededFuture(job));
-                    }
+                    handler.handle(Future.succeededFuture(decodeJob(id, r.result())));
                 } catch (Exception e) {
                     e.printStackTrace();
                     this.removeBadJob(id, "", null);
@@ -85,6 +83,63 @@ public final class JobServiceImpl implements JobService {
         return this;
     }
 
+    @Override
+    public JobService getJobs(List<Long> ids, Handler<AsyncResult<List<Job>>> handler) {
+        if (ids.isEmpty()) {
+            handler.handle(Future.succeededFuture(new ArrayList<>()));
+            return this;
+        }
+        List<Request> commandRequests = new ArrayList<>();
+        ids.forEach(id -> commandRequests.add(Request.cmd(Command.HGETALL)
+                .arg(RedisHelper.getKey("job:" + id))));
+        kue.getClient().batch(commandRequests, r -> {
+            if (r.succeeded()) {
+                List<Job> jobList = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    long id = ids.get(i);
+                    try {
+                        Job job = decodeJob(id, r.result().get(i));
+                        if (job != null) {
+                            jobList.add(job);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        this.removeBadJob(id, "", null);
+                    }
+                }
+                handler.handle(Future.succeededFuture(jobList));
+            } else {
+                handler.handle(Future.failedFuture(r.cause()));
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Decode a job from the response of HGETALL on its hash.
+     *
+     * @param id       job id
+     * @param response HGETALL response
+     * @return the job, or null if the hash does not exist
+     */
+    private Job decodeJob(long id, Response response) {
+        JsonObject result = new JsonObject(toMap((Arrays.asList(Arrays.asList(StreamSupport
+                .stream(response.spliterator(), false).toArray()).toArray(new MultiType[0])))));
+        if (!result.containsKey("id")) {
+            return null;
+        }
+        Job job = new Job(result);
+        job.setId(id);
+        job.setZid(RedisHelper.createFIFO(id));
+        return job;
+    }
+
+    @Override
+    public JobService saveAll(List<Job> jobs, Handler<AsyncResult<List<Long>>> handler) {
+        Job.saveAll(jobs).onComplete(handler);
+        return this;
+    }
+
     @Override
     public JobService removeJob(long id, Handler<AsyncResult<Void>> handler) {
         this.getJob(id, r -> {
@@ -144,8 +199,63 @@ public final class JobServiceImpl implements JobService {
         return rangeGeneral("jobs", from, to, order, handler);
     }
 
+    @Override
+    public JobService jobPage(String type, String state, String cursor, int count, String order, Handler<AsyncResult<JsonObject>> handler) {
+        String key;
+        String score = "";
+        String zid = "";
+        try {
+            if (count <= 0) {
+                throw new IllegalArgumentException("The page size must be positive");
+            }
+            if (state != null) {
+                JobState jobState = JobState.valueOf(state.toUpperCase());
+                key = type == null ? "jobs:" + jobState.name() : "jobs:" + type + ":" + jobState.name();
+            } else if (type == null) {
+                key = "jobs";
+            } else {
+                throw new IllegalArgumentException("A job state is required to page jobs of a type");
+            }
+            if (cursor != null) { // score:id of the last job of the previous page
+                int i = cursor.lastIndexOf(':');
+                score = cursor.substring(0, i);
+                Double.parseDouble(score);
+                zid = RedisHelper.createFIFO(Long.parseLong(cursor.substring(i + 1)));
+            }
+        } catch (Exception e) { // bad state or cursor
+            handler.handle(Future.failedFuture(e));
+            return this;
+        }
+        List<String> args = Arrays.asList(String.valueOf(count), "desc".equals(order) ? "desc" : "asc", score, zid);
+        PAGE_SCRIPT.eval(kue.getClient(), Collections.singletonList(RedisHelper.getKey(key)), args).onComplete(r -> {
+            if (r.failed()) {
+                handler.handle(Future.failedFuture(r.cause()));
+                return;
+            }
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < r.result().size(); i += 2) {
+                ids.add(RedisHelper.numStripFIFO(r.result().get(i).toString()));
+            }
+            String next = ids.size() < count ? null
+                    : r.result().get(r.result().size() - 1).toString() + ":" + ids.get(ids.size() - 1);
+            this.getJobs(ids, jr -> {
+                if (jr.succeeded()) {
+                    JsonArray jobs = new JsonArray();
+                    jr.result().forEach(job -> jobs.add(job.toJson()));
+                    handler.handle(Future.succeededFuture(new JsonObject().put("jobs", jobs).put("next", next)));
+                } else {
+                    handler.handle(Future.failedFuture(jr.cause()));
+                }
+            });
+        });
+        return this;
+    }
+
     /**
-     * Range job by from, to and order
+     * Range job by from, to and order.
+     * The ids are read with ZRANGE (or ZREVRANGE for `desc` order) and the jobs are fetched with
+     * {@link #getJobs} in one pipelined batch, so a page costs two round trips and keeps the order
+     * of the sorted set.
      *
      * @param key     range type(key)
      * @param from    from
@@ -158,41 +268,23 @@ public final class JobServiceImpl implements JobService {
             handler.handle(Future.failedFuture("to can not be greater than from"));
             return this;
         }
-        client.zrange(Arrays.asList(RedisHelper.getKey(key), Long.toString(from), Long.toString(to)), r -> {
+        Handler<AsyncResult<Response>> idsHandler = r -> {
             if (r.succeeded()) {
-                if (r.result().size() == 0) { // maybe empty
-                    handler.handle(Future.succeededFuture(new ArrayList<>()));
-                } else {
-                    List<Long> list = (List<Long>) RedisHelper.toJsonArray(r.result()).getList().stream()
-                            .map(e -> RedisHelper.numStripFIFO((String) e))
-                            .collect(Collectors.toList());
-                    list.sort((a1, a2) -> {
-                        if (order.equals("asc"))
-                            return Long.compare(a1, a2);
-                        else
-                            return Long.compare(a2, a1);
-                    });
-                    long max = Math.max(list.get(0), list.get(list.size() - 1));
-                    List<Job> jobList = new ArrayList<>();
-                    list.forEach(e -> {
-                        this.getJob(e, jr -> {
-                            if (jr.succeeded()) {
-                                if (jr.result() != null) {
-                                    jobList.add(jr.result());
-                                }
-                                if (e >= max) {
-                                    handler.handle(Future.succeededFuture(jobList));
-                                }
-                            } else {
-                                handler.handle(Future.failedFuture(jr.cause()));
-                            }
-                        });
-                    });
+                List<Long> ids = new ArrayList<>();
+                for (Response zid : r.result()) {
+                    ids.add(RedisHelper.numStripFIFO(zid.toString()));
                 }
+                this.getJobs(ids, handler);
             } else {
                 handler.handle(Future.failedFuture(r.cause()));
             }
-        });
+        };
+        List<String> args = Arrays.asList(RedisHelper.getKey(key), Long.toString(from), Long.toString(to));
+        if ("desc".equals(order)) {
+            client.zrevrange(args, idsHandler);
+        } else {
+            client.zrange(args, idsHandler);
+        }
         return this;
     }
 
@@ -258,9 +350,18 @@ public final class JobServiceImpl implements JobService {
 
     @Override
     public JobService cardByType(String type, JobState state, Handler<AsyncResult<Long>> handler) {
-        client.zcard(RedisHelper.getKey("jobs:" + type + ":" + state.name()), it -> {
+        List<Request> commandRequests = new ArrayList<>();
+        commandRequests.add(Request.cmd(Command.ZCARD).arg(RedisHelper.getKey("jobs:" + type + ":" + state.name())));
+        if (state == JobState.INACTIVE) {
+            commandRequests.add(Request.cmd(Command.ZCARD).arg(JobDispatcher.parkedKey(type)));
+        }
+        kue.getClient().batch(commandRequests, it -> {
             if (it.succeeded()) {
-                handler.handle(Future.succeededFuture(it.result().toLong()));
+                long count = 0;
+                for (Response r : it.result()) {
+                    count += r.toLong();
+                }
+                handler.handle(Future.succeededFuture(count));
             } else {
                 handler.handle(Future.failedFuture(it.cause()));
             }
@@ -359,6 +460,73 @@ public final class JobServiceImpl implements JobService {
         return this;
     }
 
+    @Override
+    public JobService getStats(Handler<AsyncResult<JsonObject>> handler) {
+        List<Request> commandRequests = new ArrayList<>();
+        commandRequests.add(Request.cmd(Command.GET).arg(RedisHelper.getKey("stats:work-time")));
+        for (JobState state : STATS_STATES) {
+            commandRequests.add(Request.cmd(Command.ZCARD).arg(RedisHelper.getStateKey(state)));
+        }
+        kue.getClient().batch(commandRequests, r -> {
+            if (r.succeeded()) {
+                Response workTime = r.result().get(0);
+                JsonObject stats = new JsonObject().put("workTime", workTime == null ? 0 : workTime.toLong());
+                for (int i = 0; i < STATS_STATES.length; i++) {
+                    stats.put(STATS_STATES[i].name().toLowerCase() + "Count", r.result().get(i + 1).toLong());
+                }
+                handler.handle(Future.succeededFuture(stats));
+            } else {
+                handler.handle(Future.failedFuture(r.cause()));
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public JobService getStatsByType(Handler<AsyncResult<JsonObject>> handler) {
+        this.getAllTypes(r0 -> {
+            if (r0.failed()) {
+                handler.handle(Future.failedFuture(r0.cause()));
+                return;
+            }
+            List<String> types = r0.result();
+            if (types.isEmpty()) {
+                handler.handle(Future.succeededFuture(new JsonObject()));
+                return;
+            }
+            JobState[] states = JobState.values();
+            List<Request> commandRequests = new ArrayList<>();
+            for (String type : types) {
+                for (JobState state : states) {
+                    commandRequests.add(Request.cmd(Command.ZCARD)
+                            .arg(RedisHelper.getKey("jobs:" + type + ":" + state.name())));
+                }
+                commandRequests.add(Request.cmd(Command.ZCARD).arg(JobDispatcher.parkedKey(type)));
+            }
+            kue.getClient().batch(commandRequests, r -> {
+                if (r.succeeded()) {
+                    JsonObject stats = new JsonObject();
+                    int stride = states.length + 1; // the last count of a type is its parked jobs
+                    for (int i = 0; i < types.size(); i++) {
+                        JsonObject counts = new JsonObject();
+                        for (int j = 0; j < states.length; j++) {
+                            long count = r.result().get(i * stride + j).toLong();
+                            if (states[j] == JobState.INACTIVE) {
+                                count += r.result().get(i * stride + states.length).toLong();
+                            }
+                            counts.put(states[j].name().toLowerCase(), count);
+                        }
+                        stats.put(types.get(i), counts);
+                    }
+                    handler.handle(Future.succeededFuture(stats));
+                } else {
+                    handler.handle(Future.failedFuture(r.cause()));
+                }
+            });
+        });
+        return this;
+    }
+
     private static Map<String, Object> toMap(final List<MultiType> params) {
         Map<String, Object> result = new HashMap<>();
         for (MultiType param : params) {
@@ -0,0 +1,124 @@
+package io.vertx.blueprint.kue.util;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * Standard 5-field cron expression: minute, hour, day of month, month and day of week.
+ * <p>Each field accepts `*`, single values, ranges (`1-5`), steps (`*&#47;15`, `0-30/5`) and
+ * comma-separated lists of those. Day of week goes from 0 (Sunday) to 7 (Sunday again). As in
+ * standard cron, when both day of month and day of week are restricted (not `*`), a day matching
+ * either of them matches.</p>
+ * <p>Times are matched in the local time of the zone. A time skipped by a daylight saving gap
+ * does not match, and a time repeated by a daylight saving overlap only matches once, at its
+ * earlier offset.</p>
+ */
+public final class CronExpression {
+
+    private final String expression;
+    private final ZoneId zone;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet daysOfMonth;
+    private final BitSet months;
+    private final BitSet daysOfWeek;
+    private final boolean anyDayOfMonth;
+    private final boolean anyDayOfWeek;
+
+    public CronExpression(String expression) {
+        this(expression, ZoneId.systemDefault());
+    }
+
+    public CronExpression(String expression, ZoneId zone) {
+        String[] fields = expression.trim().split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Cron expression must have 5 fields: " + expression);
+        }
+        this.expression = expression;
+        this.zone = zone;
+        this.minutes = parse(fields[0], 0, 59);
+        this.hours = parse(fields[1], 0, 23);
+        this.daysOfMonth = parse(fields[2], 1, 31);
+        this.months = parse(fields[3], 1, 12);
+        this.daysOfWeek = parse(fields[4], 0, 7);
+        if (daysOfWeek.get(7)) {
+            daysOfWeek.set(0);
+        }
+        this.anyDayOfMonth = "*".equals(fields[2]);
+        this.anyDayOfWeek = "*".equals(fields[4]);
+    }
+
+    /**
+     * Get the first matching time strictly after the given time.
+     *
+     * @param after time in milliseconds
+     * @return next matching time in milliseconds
+     */
+    public long next(long after) {
+        ZonedDateTime t = Instant.ofEpochMilli(after).atZone(zone)
+                .truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = t.plusYears(5); // e.g. "0 0 30 2 *" never matches
+        while (t.isBefore(limit)) {
+            if (!months.get(t.getMonthValue())) {
+                t = t.plusMonths(1).withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+            } else if (!matchesDay(t)) {
+                t = t.plusDays(1).truncatedTo(ChronoUnit.DAYS);
+            } else if (!hours.get(t.getHour())) {
+                t = t.plusHours(1).truncatedTo(ChronoUnit.HOURS);
+            } else if (!minutes.get(t.getMinute()) || !t.equals(t.withEarlierOffsetAtOverlap())) {
+                t = t.plusMinutes(1);
+            } else {
+                return t.toInstant().toEpochMilli();
+            }
+        }
+        throw new IllegalStateException("Cron expression never matches: " + expression);
+    }
+
+    private boolean matchesDay(ZonedDateTime t) {
+        boolean dom = daysOfMonth.get(t.getDayOfMonth());
+        boolean dow = daysOfWeek.get(t.getDayOfWeek().getValue() % 7);
+        if (anyDayOfMonth || anyDayOfWeek) {
+            return dom && dow;
+        }
+        return dom || dow;
+    }
+
+    private static BitSet parse(String field, int min, int max) {
+        BitSet bits = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = Integer.parseInt(part.substring(slash + 1));
+                part = part.substring(0, slash);
+            }
+            int from;
+            int to;
+            if ("*".equals(part)) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = Integer.parseInt(part.substring(0, part.indexOf('-')));
+                to = Integer.parseInt(part.substring(part.indexOf('-') + 1));
+            } else {
+                from = Integer.parseInt(part);
+                to = slash >= 0 ? max : from;
+            }
+            if (from < min || to > max || from > to || step <= 0) {
+                throw new IllegalArgumentException("Invalid cron field: " + field);
+            }
+            for (int i = from; i <= to; i += step) {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
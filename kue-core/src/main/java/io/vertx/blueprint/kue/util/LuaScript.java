@@ -0,0 +1,185 @@
+package io.vertx.blueprint.kue.util;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.redis.client.Command;
+import io.vertx.redis.client.Redis;
+import io.vertx.redis.client.Request;
+import io.vertx.redis.client.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * A Lua script executed on the Redis server with EVALSHA.
+ * <p>The source is read from the classpath (<code>/lua/{name}.lua</code>) and its SHA1 digest is
+ * computed locally, so the script is only sent to Redis when the server does not know it yet.</p>
+ * <p>The scripts also touch keys they derive from the data they read (job hashes, groups,
+ * concurrency holders and waiting lists), which are not declared in KEYS. They thus need all
+ * the keys of the queue on a single Redis node and do not support Redis Cluster.</p>
+ */
+public final class LuaScript {
+
+    private static final Logger logger = LoggerFactory.getLogger(LuaScript.class);
+
+    private static final String INCLUDE = "--@include ";
+
+    private final String name;
+    private final String source;
+    private final String sha;
+
+    private LuaScript(String name, String source) {
+        this.name = name;
+        this.source = source;
+        this.sha = sha1(source);
+    }
+
+    /**
+     * Load a script from the classpath. A line of the form <code>--@include {name}</code> is
+     * replaced with the source of <code>/lua/{name}.lua</code>, so scripts can share local functions.
+     *
+     * @param name script name (without the `.lua` extension)
+     * @return the script
+     */
+    public static LuaScript load(String name) {
+        return new LuaScript(name, read(name));
+    }
+
+    private static String read(String name) {
+        String source;
+        try (InputStream in = LuaScript.class.getResourceAsStream("/lua/" + name + ".lua")) {
+            if (in == null) {
+                throw new IllegalStateException("Lua script not found: " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            source = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read Lua script: " + name, e);
+        }
+        StringBuilder sb = new StringBuilder();
+        String[] lines = source.split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (i > 0) {
+                sb.append('\n');
+            }
+            if (line.startsWith(INCLUDE)) {
+                sb.append(read(line.substring(INCLUDE.length()).trim()));
+            } else {
+                sb.append(line);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Build an EVALSHA request, e.g. for sending it within a batch.
+     *
+     * @param keys keys passed as `KEYS`
+     * @param args arguments passed as `ARGV`
+     * @return the request
+     */
+    public Request request(List<String> keys, List<String> args) {
+        Request request = Request.cmd(Command.EVALSHA)
+                .arg(sha)
+                .arg(String.valueOf(keys.size()));
+        for (String key : keys) {
+            request.arg(key);
+        }
+        for (String arg : args) {
+            request.arg(arg);
+        }
+        return request;
+    }
+
+    /**
+     * Execute the script, loading it first if the server does not know it.
+     *
+     * @param client Redis client
+     * @param keys   keys passed as `KEYS`
+     * @param args   arguments passed as `ARGV`
+     * @return async result of the script reply
+     */
+    public Future<Response> eval(Redis client, List<String> keys, List<String> args) {
+        Promise<Response> promise = Promise.promise();
+        client.send(request(keys, args), r -> {
+            if (r.succeeded()) {
+                promise.complete(r.result());
+            } else if (isNoScript(r.cause())) {
+                scriptLoad(client)
+                        .onSuccess(v -> client.send(request(keys, args), promise))
+                        .onFailure(promise::fail);
+            } else {
+                promise.fail(r.cause());
+            }
+        });
+        return promise.future();
+    }
+
+    /**
+     * Send a pipelined batch that contains requests built by {@link #request(List, List)},
+     * loading the script first if the server does not know it.
+     *
+     * @param client   Redis client
+     * @param requests requests to pipeline
+     * @return async result of the replies, in request order
+     */
+    public Future<List<Response>> batch(Redis client, List<Request> requests) {
+        Promise<List<Response>> promise = Promise.promise();
+        client.batch(requests, r -> {
+            if (r.succeeded()) {
+                promise.complete(r.result());
+            } else if (isNoScript(r.cause())) {
+                scriptLoad(client)
+                        .onSuccess(v -> client.batch(requests, promise))
+                        .onFailure(promise::fail);
+            } else {
+                promise.fail(r.cause());
+            }
+        });
+        return promise.future();
+    }
+
+    private Future<Void> scriptLoad(Redis client) {
+        logger.debug("Loading Lua script: " + name);
+        Promise<Void> promise = Promise.promise();
+        client.send(Request.cmd(Command.SCRIPT).arg("LOAD").arg(source), r -> {
+            if (r.succeeded()) {
+                promise.complete();
+            } else {
+                logger.error("Failed to load Lua script: " + name, r.cause());
+                promise.fail(r.cause());
+            }
+        });
+        return promise.future();
+    }
+
+    private static boolean isNoScript(Throwable ex) {
+        return ex.getMessage() != null && ex.getMessage().startsWith("NOSCRIPT");
+    }
+
+    private static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
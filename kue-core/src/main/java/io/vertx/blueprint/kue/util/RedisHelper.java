@@ -116,4 +116,18 @@ public final class RedisHelper {
         });
         return result;
     }
+
+    /**
+     * Convert a flat field/value reply (e.g. HGETALL returned from a Lua script) to a json object.
+     *
+     * @param r flat reply
+     * @return json object with string values
+     */
+    public static JsonObject toJsonObject(Response r) {
+        JsonObject result = new JsonObject();
+        for (int i = 0; i + 1 < r.size(); i += 2) {
+            result.put(r.get(i).toString(), r.get(i + 1).toString());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,163 @@
+package io.vertx.blueprint.kue.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel.
+ * <p>The first level has `wheelSize` buckets of `tick` milliseconds. Each further level, created
+ * when a deadline does not fit in the levels below, has buckets as long as the whole level below.
+ * Adding a timer and firing it are O(1) and a timer costs one small entry, so millions of pending
+ * timers are cheap. As the wheel advances, the bucket of a higher level that becomes current is
+ * spread over the levels below. A timer fires once its deadline is reached, at most one tick late.</p>
+ * <p>Not thread-safe.</p>
+ *
+ * @param <T> type of the timer values
+ */
+public class TimingWheel<T> {
+
+    private final int wheelSize;
+    private final List<Level<T>> levels = new ArrayList<>();
+    private int size = 0;
+
+    public TimingWheel(long tick, int wheelSize, long now) {
+        this.wheelSize = wheelSize;
+        levels.add(new Level<>(tick, wheelSize, now));
+    }
+
+    /**
+     * Number of pending timers.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a timer.
+     *
+     * @param deadline deadline in milliseconds
+     * @param value    timer value
+     * @return false if the deadline is before the current tick, in which case the timer is not added
+     */
+    public boolean add(long deadline, T value) {
+        if (!place(new Entry<>(deadline, value))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Advance the wheel to the given time, firing the timers whose deadline has been reached.
+     *
+     * @param now  current time in milliseconds
+     * @param fire handler of the fired values
+     */
+    public void advance(long now, Consumer<T> fire) {
+        Level<T> base = levels.get(0);
+        if (size == 0) {
+            levels.forEach(level -> level.currentTime = now - now % level.tick);
+            return;
+        }
+        while (base.currentTime + base.tick <= now && size > 0) {
+            // every timer of the current bucket is due: its deadline is below the end of the tick
+            Deque<Entry<T>> due = base.take(base.currentTime);
+            base.currentTime += base.tick;
+            if (due != null) {
+                size -= due.size();
+                due.forEach(e -> fire.accept(e.value));
+            }
+            // move the higher levels whose bucket became current, spreading it over the levels below
+            List<Deque<Entry<T>>> cascading = new ArrayList<>();
+            for (int i = 1; i < levels.size(); i++) {
+                Level<T> level = levels.get(i);
+                if (base.currentTime < level.currentTime + level.tick) {
+                    break;
+                }
+                level.currentTime += level.tick;
+                cascading.add(level.take(level.currentTime));
+            }
+            for (int i = cascading.size() - 1; i >= 0; i--) {
+                Deque<Entry<T>> bucket = cascading.get(i);
+                if (bucket != null) {
+                    bucket.forEach(e -> {
+                        if (!place(e)) {
+                            size--;
+                            fire.accept(e.value);
+                        }
+                    });
+                }
+            }
+        }
+        if (size == 0) {
+            levels.forEach(level -> level.currentTime = now - now % level.tick);
+        }
+    }
+
+    private boolean place(Entry<T> e) {
+        if (e.deadline < levels.get(0).currentTime) { // the bucket of the deadline has already fired
+            return false;
+        }
+        for (int i = 0; ; i++) {
+            if (i == levels.size()) {
+                Level<T> last = levels.get(i - 1);
+                levels.add(new Level<>(last.interval, wheelSize, last.currentTime));
+            }
+            Level<T> level = levels.get(i);
+            if (e.deadline < level.currentTime + level.interval) {
+                level.put(e);
+                return true;
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        private final long deadline;
+        private final T value;
+
+        private Entry(long deadline, T value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+    }
+
+    private static final class Level<T> {
+        private final long tick;
+        private final long interval;
+        private final Object[] buckets; // lazily created deques of entries
+        private long currentTime; // start of the current bucket
+
+        private Level(long tick, int wheelSize, long now) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.buckets = new Object[wheelSize];
+            this.currentTime = now - now % tick;
+        }
+
+        private int index(long time) {
+            return (int) ((time / tick) % buckets.length);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void put(Entry<T> e) {
+            int i = index(e.deadline);
+            Deque<Entry<T>> bucket = (Deque<Entry<T>>) buckets[i];
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                buckets[i] = bucket;
+            }
+            bucket.add(e);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Deque<Entry<T>> take(long time) {
+            int i = index(time);
+            Deque<Entry<T>> bucket = (Deque<Entry<T>>) buckets[i];
+            buckets[i] = null;
+            return bucket;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.vertx.blueprint.kue.util;
+
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Helper class for running tasks on virtual threads when the runtime supports them.
+ * The factory method is looked up reflectively so the project still targets Java 8.
+ */
+public final class VirtualThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task.
+     *
+     * @return the new executor, or null if the running JVM does not support virtual threads
+     */
+    public static ExecutorService newExecutor() {
+        Method factory = factory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            logger.warn("Failed to create virtual thread executor", ex);
+            return null;
+        }
+    }
+
+    private static Method factory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
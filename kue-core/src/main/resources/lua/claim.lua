@@ -0,0 +1,116 @@
+-- Claim up to ARGV[1] inactive jobs of one type and move them to ACTIVE.
+--
+-- KEYS[1] jobs:{type}:INACTIVE   KEYS[2] jobs:INACTIVE
+-- KEYS[3] jobs:{type}:ACTIVE     KEYS[4] jobs:ACTIVE
+-- KEYS[5] {type}:jobs (wake-up sentinels)
+-- KEYS[6] jobs:ACTIVE:leases
+-- KEYS[7] ratelimit:{type} (token bucket: rate per second, burst, tokens, ts)
+-- KEYS[8] concurrency:{type} (max active jobs of the type, and per concurrency key)
+-- KEYS[9] jobs:{type}:INACTIVE:parked
+-- ARGV[1] max number of jobs to claim
+-- ARGV[2] current time (ms)
+-- ARGV[3] key prefix
+-- ARGV[4] number of sentinels already consumed by the caller (BLPOP)
+-- ARGV[5] lease duration (ms); the lease also ends when the job ttl runs out
+-- ARGV[6] time to wait (ms) before claiming again when the type is at its concurrency limit
+-- ARGV[7] job type
+--
+-- Returns the time to wait (ms) before the type can be claimed again, 0 if it is not held
+-- back by its rate or concurrency limit, followed by the HGETALL reply of every claimed job,
+-- in priority order.
+--
+-- A job whose concurrency key already holds as many active jobs as allowed is set aside in the
+-- list concurrency:{type}:{key}:waiting and in jobs:{type}:INACTIVE:parked, where it is still
+-- counted as inactive; it is made claimable again when a job of the same key leaves ACTIVE
+-- (see lib/free.lua) or when the limits of the type change (see limit.lua).
+--
+-- Job hashes, holder sets and waiting lists are derived from the data read here and are not
+-- declared in KEYS, so the scripts need all keys on one Redis node (no Redis Cluster).
+
+local now = tonumber(ARGV[2])
+local count = tonumber(ARGV[1])
+local wait = 0
+local bucket = redis.call('HMGET', KEYS[7], 'rate', 'burst', 'tokens', 'ts')
+local tokens
+if bucket[1] then
+  local rate = tonumber(bucket[1])
+  local burst = tonumber(bucket[2] or bucket[1])
+  tokens = tonumber(bucket[3] or burst)
+  tokens = math.min(burst, tokens + math.max(0, now - tonumber(bucket[4] or now)) * rate / 1000)
+  count = math.min(count, math.floor(tokens))
+  if count <= 0 then
+    wait = math.ceil((1 - tokens) * 1000 / rate)
+  end
+end
+local limits = redis.call('HMGET', KEYS[8], 'limit', 'key_limit')
+local limit = tonumber(limits[1] or '0')
+local keyLimit = tonumber(limits[2] or '0')
+if limit > 0 and count > 0 then
+  count = math.min(count, limit - redis.call('ZCARD', KEYS[3]))
+  if count <= 0 then
+    wait = tonumber(ARGV[6])
+  end
+end
+
+local result = {wait}
+local claimed = 0
+local popped = 0
+while claimed < count do
+  local batch = redis.call('ZPOPMIN', KEYS[1], count - claimed)
+  if #batch == 0 then
+    break
+  end
+  popped = popped + #batch / 2
+  for i = 1, #batch, 2 do
+    local zid = batch[i]
+    local score = tonumber(batch[i + 1])
+    local id = string.sub(zid, string.find(zid, '|', 1, true) + 1)
+    local jobKey = ARGV[3] .. 'job:' .. id
+    if redis.call('EXISTS', jobKey) == 1 then
+      local holders
+      if keyLimit > 0 then
+        local key = redis.call('HGET', jobKey, 'concurrencyKey')
+        if key then
+          holders = ARGV[3] .. 'concurrency:' .. ARGV[7] .. ':' .. key
+        end
+      end
+      if holders and redis.call('SCARD', holders) >= keyLimit then
+        redis.call('RPUSH', holders .. ':waiting', zid)
+        redis.call('ZADD', KEYS[9], score, zid)
+      else
+        if holders then
+          redis.call('SADD', holders, zid)
+        end
+        redis.call('ZREM', KEYS[2], zid)
+        redis.call('ZADD', KEYS[3], score, zid)
+        redis.call('ZADD', KEYS[4], -math.abs(score), zid)
+        redis.call('HSET', jobKey, 'state', 'ACTIVE', 'started_at', ARGV[2], 'updated_at', ARGV[2])
+        local expiry = now + tonumber(ARGV[5])
+        local ttl = tonumber(redis.call('HGET', jobKey, 'ttl') or '0')
+        if ttl > 0 and now + ttl < expiry then
+          expiry = now + ttl
+        end
+        redis.call('ZADD', KEYS[6], expiry, zid)
+        result[#result + 1] = redis.call('HGETALL', jobKey)
+        claimed = claimed + 1
+      end
+    else
+      redis.call('ZREM', KEYS[2], zid)
+    end
+  end
+end
+if tokens then
+  redis.call('HSET', KEYS[7], 'tokens', tokens - claimed, 'ts', ARGV[2])
+end
+
+-- keep one sentinel per claimable job: drop those of the popped jobs, and give back the ones
+-- consumed by the caller for jobs left behind because of a limit
+local consumed = tonumber(ARGV[4])
+for i = consumed + 1, popped do
+  redis.call('LPOP', KEYS[5])
+end
+local left = math.min(consumed - popped, redis.call('ZCARD', KEYS[1]))
+for i = 1, left do
+  redis.call('LPUSH', KEYS[5], 1)
+end
+return result
@@ -0,0 +1,56 @@
+-- Complete an active job: write its final fields and move it to the COMPLETE sets,
+-- or delete it altogether when it is removed on completion. The concurrency slot held by the
+-- job is freed and its group released.
+--
+-- Only the holder of the claim can complete the job: the job must still be ACTIVE with a lease,
+-- and its `started_at` must be the one stamped by the claim of the caller. A worker whose lease
+-- expired thus cannot complete a job the reaper re-queued or another worker claimed again.
+--
+-- KEYS[1] job:{id}               KEYS[2] job:{id}:log
+-- KEYS[3] jobs                   KEYS[4] jobs:COMPLETE
+-- KEYS[5] jobs:{type}:COMPLETE   KEYS[6] jobs:ACTIVE:leases
+-- ARGV[1] key prefix
+-- ARGV[2] job type
+-- ARGV[3] job zid
+-- ARGV[4] priority score
+-- ARGV[5] now
+-- ARGV[6] 1 to remove the job on completion, 0 to keep it
+-- ARGV[7] duration
+-- ARGV[8] encoded result, or an empty string if there is none
+-- ARGV[9] `started_at` of the claim of the caller
+--
+-- Returns 1 if the job was completed (or removed), 0 if it no longer exists or is no longer
+-- held by the caller.
+
+--@include lib/free
+--@include lib/release
+
+local old, key, startedAt, group = unpack(redis.call('HMGET', KEYS[1],
+  'state', 'concurrencyKey', 'started_at', 'group'))
+if old ~= 'ACTIVE' or startedAt ~= ARGV[9] or not redis.call('ZSCORE', KEYS[6], ARGV[3]) then
+  return 0
+end
+if key then
+  free(ARGV[1], ARGV[2], key, ARGV[3])
+end
+redis.call('ZREM', ARGV[1] .. 'jobs:ACTIVE', ARGV[3])
+redis.call('ZREM', ARGV[1] .. 'jobs:' .. ARGV[2] .. ':ACTIVE', ARGV[3])
+redis.call('ZREM', KEYS[6], ARGV[3])
+if group then
+  release(ARGV[1], ARGV[2], group, ARGV[3])
+end
+
+if ARGV[6] == '1' then
+  redis.call('ZREM', KEYS[3], ARGV[3])
+  redis.call('DEL', KEYS[1], KEYS[2])
+  return 1
+end
+
+redis.call('HMSET', KEYS[1], 'state', 'COMPLETE', 'progress', '100',
+  'duration', ARGV[7], 'updated_at', ARGV[5])
+if ARGV[8] ~= '' then
+  redis.call('HSET', KEYS[1], 'result', ARGV[8])
+end
+redis.call('ZADD', KEYS[4], ARGV[4], ARGV[3])
+redis.call('ZADD', KEYS[5], ARGV[4], ARGV[3])
+return 1
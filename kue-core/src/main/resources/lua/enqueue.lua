@@ -0,0 +1,60 @@
+-- Persist a new job and index it, reserving a block of ids unless an id is given.
+--
+-- KEYS[1] ids                    KEYS[2] job:types
+-- KEYS[3] jobs                   KEYS[4] jobs:{state}
+-- KEYS[5] jobs:{type}:{state}    KEYS[6] {type}:jobs (wake-up sentinels)
+-- KEYS[7] optional guard key: the job is only enqueued if it holds ARGV[8]
+-- ARGV[1] key prefix
+-- ARGV[2] job id, or 0 to reserve ids with INCRBY
+-- ARGV[3] number of ids to reserve when ARGV[2] is 0; the job gets the first one
+-- ARGV[4] job type
+-- ARGV[5] job state (INACTIVE or DELAYED)
+-- ARGV[6] priority score
+-- ARGV[7] score in the global state set (promote_at for DELAYED jobs)
+-- ARGV[8] expected value of the guard key (empty if the key must not exist)
+-- ARGV[9] new value of the guard key
+-- ARGV[10..] job hash field/value pairs
+--
+-- A job with a `group` field is appended to the list group:{type}:{group}. Unless it is the
+-- head of that list, an INACTIVE job is only indexed in the global sets: it gets claimable
+-- when the jobs ahead of it are done (see lib/release.lua).
+--
+-- Returns the id of the new job, negated if the guard prevented the enqueue.
+
+local id = tonumber(ARGV[2])
+if id == 0 then
+  id = redis.call('INCRBY', KEYS[1], ARGV[3]) - tonumber(ARGV[3]) + 1
+end
+if KEYS[7] then
+  if (redis.call('GET', KEYS[7]) or '') ~= ARGV[8] then
+    return -id
+  end
+  redis.call('SET', KEYS[7], ARGV[9])
+end
+local idStr = string.format('%d', id)
+local zid = string.format('%02d|%s', string.len(idStr), idStr)
+local jobKey = ARGV[1] .. 'job:' .. idStr
+
+redis.call('SADD', KEYS[2], ARGV[4])
+local fields = {}
+local group
+for i = 10, #ARGV do
+  fields[#fields + 1] = ARGV[i]
+  if ARGV[i] == 'group' and i % 2 == 0 then
+    group = ARGV[i + 1]
+  end
+end
+redis.call('HMSET', jobKey, 'id', idStr, 'zid', zid, unpack(fields))
+redis.call('ZADD', KEYS[3], ARGV[6], zid)
+redis.call('ZADD', KEYS[4], ARGV[7], zid)
+local head = true
+if group then
+  head = redis.call('RPUSH', ARGV[1] .. 'group:' .. ARGV[4] .. ':' .. group, zid) == 1
+end
+if head or ARGV[5] ~= 'INACTIVE' then
+  redis.call('ZADD', KEYS[5], ARGV[6], zid)
+end
+if head and ARGV[5] == 'INACTIVE' then
+  redis.call('LPUSH', KEYS[6], 1)
+end
+return id
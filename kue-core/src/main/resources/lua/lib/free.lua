@@ -0,0 +1,25 @@
+-- Free the concurrency slot held by a job leaving ACTIVE, and make the next job waiting for
+-- a slot of the same concurrency key claimable again (see claim.lua). Skips waiting jobs that
+-- left INACTIVE meanwhile, which are no longer in jobs:{type}:INACTIVE:parked.
+--
+-- Returns 1 if a slot was freed, 0 if the job held none.
+local function free(prefix, jobType, key, zid)
+  local holders = prefix .. 'concurrency:' .. jobType .. ':' .. key
+  local parked = prefix .. 'jobs:' .. jobType .. ':INACTIVE:parked'
+  if redis.call('SREM', holders, zid) == 0 then
+    return 0
+  end
+  while true do
+    local waiting = redis.call('LPOP', holders .. ':waiting')
+    if not waiting then
+      return 1
+    end
+    local score = redis.call('ZSCORE', parked, waiting)
+    if score then
+      redis.call('ZREM', parked, waiting)
+      redis.call('ZADD', prefix .. 'jobs:' .. jobType .. ':INACTIVE', score, waiting)
+      redis.call('LPUSH', prefix .. jobType .. ':jobs', 1)
+      return 1
+    end
+  end
+end
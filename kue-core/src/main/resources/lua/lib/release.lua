@@ -0,0 +1,39 @@
+-- Release a job of a group once it is done (completed, failed for good or removed), letting
+-- the next job of the group be claimed. Jobs of a group are kept in enqueue order in the list
+-- group:{type}:{group} and only the head of the list is indexed in jobs:{type}:INACTIVE, so at
+-- most one job of a group is in flight and the jobs of a group run in FIFO order.
+--
+-- Jobs ahead in the group that can no longer run in turn are skipped: removed, COMPLETE or
+-- FAILED jobs (e.g. set by hand while waiting), and ACTIVE jobs without a lease, which no
+-- worker is processing.
+--
+-- Returns 1 if the next job of the group became claimable, 0 otherwise.
+local function release(prefix, jobType, group, zid)
+  local members = prefix .. 'group:' .. jobType .. ':' .. group
+  local head = redis.call('LINDEX', members, 0)
+  redis.call('LREM', members, 1, zid)
+  if head ~= zid then
+    return 0
+  end
+  local leases = prefix .. 'jobs:ACTIVE:leases'
+  while true do
+    local first = redis.call('LINDEX', members, 0)
+    if not first then
+      return 0
+    end
+    local id = string.sub(first, string.find(first, '|', 1, true) + 1)
+    local state = redis.call('HGET', prefix .. 'job:' .. id, 'state')
+    if not state or state == 'COMPLETE' or state == 'FAILED'
+        or (state == 'ACTIVE' and not redis.call('ZSCORE', leases, first)) then
+      redis.call('LPOP', members)
+    elseif state == 'INACTIVE' then
+      local score = redis.call('ZSCORE', prefix .. 'jobs:INACTIVE', first) or 0
+      redis.call('ZADD', prefix .. 'jobs:' .. jobType .. ':INACTIVE', score, first)
+      redis.call('LPUSH', prefix .. jobType .. ':jobs', 1)
+      return 1
+    else
+      -- a delayed head is indexed by the promote script when due, an active one released when done
+      return 0
+    end
+  end
+end
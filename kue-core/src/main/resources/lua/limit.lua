@@ -0,0 +1,26 @@
+-- Set the concurrency limits of a job type, and make the jobs parked behind a busy concurrency
+-- key claimable again: the claim script parks them anew if they are still over the new limits.
+--
+-- KEYS[1] concurrency:{type}     KEYS[2] jobs:{type}:INACTIVE:parked
+-- KEYS[3] jobs:{type}:INACTIVE   KEYS[4] {type}:jobs (wake-up sentinels)
+-- ARGV[1] max active jobs of the type, 0 for no limit
+-- ARGV[2] max active jobs per concurrency key, 0 for no limit
+-- ARGV[3] key prefix
+-- ARGV[4] job type
+--
+-- Returns the number of unparked jobs.
+
+redis.call('HSET', KEYS[1], 'limit', ARGV[1], 'key_limit', ARGV[2])
+local parked = redis.call('ZRANGE', KEYS[2], 0, -1, 'WITHSCORES')
+for i = 1, #parked, 2 do
+  local zid = parked[i]
+  local id = string.sub(zid, string.find(zid, '|', 1, true) + 1)
+  local key = redis.call('HGET', ARGV[3] .. 'job:' .. id, 'concurrencyKey')
+  if key then
+    redis.call('DEL', ARGV[3] .. 'concurrency:' .. ARGV[4] .. ':' .. key .. ':waiting')
+  end
+  redis.call('ZADD', KEYS[3], parked[i + 1], zid)
+  redis.call('LPUSH', KEYS[4], 1)
+end
+redis.call('DEL', KEYS[2])
+return #parked / 2
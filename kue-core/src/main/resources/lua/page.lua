@@ -0,0 +1,51 @@
+-- Read a page of a job sorted set after a cursor (keyset pagination).
+--
+-- KEYS[1] sorted set of jobs
+-- ARGV[1] page size
+-- ARGV[2] order: asc or desc
+-- ARGV[3] score of the cursor, or an empty string for the first page
+-- ARGV[4] zid of the cursor
+--
+-- The cursor is the last job of the previous page. The page starts right after the position
+-- the cursor would have in the set, by score then by zid like Redis orders it, even if its job
+-- left the set or changed its score meanwhile. The position is counted with ZCOUNT, then by a
+-- binary search among the jobs at the cursor score, so the set is only read, at the cost of
+-- O(log n) per page.
+--
+-- Returns the zids of the page and their scores (WITHSCORES reply).
+
+local count = tonumber(ARGV[1])
+local desc = ARGV[2] == 'desc'
+local start = 0
+if ARGV[3] ~= '' then
+  -- jobs before the cursor (lt) and up to the cursor included (le), in ascending order
+  local lt, le
+  local score = redis.call('ZSCORE', KEYS[1], ARGV[4])
+  if score and tonumber(score) == tonumber(ARGV[3]) then
+    lt = redis.call('ZRANK', KEYS[1], ARGV[4])
+    le = lt + 1
+  else
+    -- the jobs at the cursor score are ranked from lo to hi - 1, by zid
+    local lo = redis.call('ZCOUNT', KEYS[1], '-inf', '(' .. ARGV[3])
+    local hi = redis.call('ZCOUNT', KEYS[1], '-inf', ARGV[3])
+    while lo < hi do
+      local mid = math.floor((lo + hi) / 2)
+      if redis.call('ZRANGE', KEYS[1], mid, mid)[1] < ARGV[4] then
+        lo = mid + 1
+      else
+        hi = mid
+      end
+    end
+    lt = lo
+    le = lo
+  end
+  if desc then
+    start = redis.call('ZCARD', KEYS[1]) - lt
+  else
+    start = le
+  end
+end
+if desc then
+  return redis.call('ZREVRANGE', KEYS[1], start, start + count - 1, 'WITHSCORES')
+end
+return redis.call('ZRANGE', KEYS[1], start, start + count - 1, 'WITHSCORES')
@@ -0,0 +1,46 @@
+-- Promote due delayed jobs to INACTIVE and wake up the workers of their type.
+--
+-- KEYS[1] jobs:DELAYED           KEYS[2] jobs:INACTIVE
+-- ARGV[1] current time (ms)
+-- ARGV[2] max number of jobs to promote
+-- ARGV[3] key prefix
+-- ARGV[4..] zids of the jobs to promote if they are due; without them the due jobs are looked up
+--
+-- A job of a group is only made claimable if it is the head of its group (see lib/release.lua).
+--
+-- Returns id, type and address id of every promoted job, as a flat list.
+
+local due
+if #ARGV > 3 then
+  due = {}
+  for i = 4, #ARGV do
+    local score = redis.call('ZSCORE', KEYS[1], ARGV[i])
+    if score and tonumber(score) <= tonumber(ARGV[1]) then
+      due[#due + 1] = ARGV[i]
+    end
+  end
+else
+  due = redis.call('ZRANGEBYSCORE', KEYS[1], 0, ARGV[1], 'LIMIT', 0, ARGV[2])
+end
+local promoted = {}
+for _, zid in ipairs(due) do
+  redis.call('ZREM', KEYS[1], zid)
+  local id = string.sub(zid, string.find(zid, '|', 1, true) + 1)
+  local jobKey = ARGV[3] .. 'job:' .. id
+  local job = redis.call('HMGET', jobKey, 'state', 'type', 'address_id', 'group')
+  if job[1] == 'DELAYED' then
+    local typeDelayed = ARGV[3] .. 'jobs:' .. job[2] .. ':DELAYED'
+    local score = redis.call('ZSCORE', typeDelayed, zid) or 0
+    redis.call('ZREM', typeDelayed, zid)
+    redis.call('ZADD', KEYS[2], score, zid)
+    redis.call('HSET', jobKey, 'state', 'INACTIVE', 'updated_at', ARGV[1])
+    if not job[4] or redis.call('LINDEX', ARGV[3] .. 'group:' .. job[2] .. ':' .. job[4], 0) == zid then
+      redis.call('ZADD', ARGV[3] .. 'jobs:' .. job[2] .. ':INACTIVE', score, zid)
+      redis.call('LPUSH', ARGV[3] .. job[2] .. ':jobs', 1)
+    end
+    promoted[#promoted + 1] = id
+    promoted[#promoted + 1] = job[2]
+    promoted[#promoted + 1] = job[3]
+  end
+end
+return promoted
@@ -0,0 +1,54 @@
+-- Recover active jobs whose lease expired, e.g. because their worker crashed.
+-- A job with attempts left goes back to INACTIVE, any other job is FAILED and its group
+-- released. The concurrency slot held by the job is freed.
+--
+-- KEYS[1] jobs:ACTIVE:leases     KEYS[2] jobs:ACTIVE
+-- KEYS[3] jobs:INACTIVE          KEYS[4] jobs:FAILED
+-- ARGV[1] current time (ms)
+-- ARGV[2] max number of jobs to recover
+-- ARGV[3] key prefix
+--
+-- Returns the HGETALL reply of every recovered job.
+
+--@include lib/free
+--@include lib/release
+
+local expired = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+local recovered = {}
+for _, zid in ipairs(expired) do
+  redis.call('ZREM', KEYS[1], zid)
+  local id = string.sub(zid, string.find(zid, '|', 1, true) + 1)
+  local jobKey = ARGV[3] .. 'job:' .. id
+  local state = redis.call('HGET', jobKey, 'state')
+  if not state then
+    redis.call('ZREM', KEYS[2], zid)
+  elseif state == 'ACTIVE' then
+    local jobType, key, group = unpack(redis.call('HMGET', jobKey,
+      'type', 'concurrencyKey', 'group'))
+    if key then
+      free(ARGV[3], jobType, key, zid)
+    end
+    local typeActive = ARGV[3] .. 'jobs:' .. jobType .. ':ACTIVE'
+    local score = redis.call('ZSCORE', typeActive, zid) or 0
+    redis.call('ZREM', KEYS[2], zid)
+    redis.call('ZREM', typeActive, zid)
+    local attempts = redis.call('HINCRBY', jobKey, 'attempts', 1)
+    local maxAttempts = tonumber(redis.call('HGET', jobKey, 'max_attempts') or '1')
+    if attempts < maxAttempts then
+      redis.call('ZADD', KEYS[3], score, zid)
+      redis.call('ZADD', ARGV[3] .. 'jobs:' .. jobType .. ':INACTIVE', score, zid)
+      redis.call('HSET', jobKey, 'state', 'INACTIVE', 'updated_at', ARGV[1])
+      redis.call('LPUSH', ARGV[3] .. jobType .. ':jobs', 1)
+    else
+      redis.call('ZADD', KEYS[4], score, zid)
+      redis.call('ZADD', ARGV[3] .. 'jobs:' .. jobType .. ':FAILED', score, zid)
+      redis.call('HSET', jobKey, 'state', 'FAILED', 'error', 'Lease expired',
+        'failed_at', ARGV[1], 'updated_at', ARGV[1])
+      if group then
+        release(ARGV[3], jobType, group, zid)
+      end
+    end
+    recovered[#recovered + 1] = redis.call('HGETALL', jobKey)
+  end
+end
+return recovered
@@ -0,0 +1,31 @@
+-- Remove a job: delete its hash and log and drop it from every index and from the leases.
+-- The concurrency slot held by the job is freed, and a job waiting for a slot of its
+-- concurrency key leaves the waiting list. The group of the job is released.
+--
+-- KEYS[1] job:{id}               KEYS[2] job:{id}:log
+-- KEYS[3] jobs                   KEYS[4] jobs:ACTIVE:leases
+-- ARGV[1] key prefix
+-- ARGV[2] job type
+-- ARGV[3] job zid
+-- ARGV[4] job state, used if the job hash no longer exists
+--
+-- Returns 1 if the job hash existed, 0 otherwise.
+
+--@include lib/free
+--@include lib/release
+
+local state, key, group = unpack(redis.call('HMGET', KEYS[1], 'state', 'concurrencyKey', 'group'))
+if key then
+  redis.call('LREM', ARGV[1] .. 'concurrency:' .. ARGV[2] .. ':' .. key .. ':waiting', 0, ARGV[3])
+  redis.call('ZREM', ARGV[1] .. 'jobs:' .. ARGV[2] .. ':INACTIVE:parked', ARGV[3])
+  free(ARGV[1], ARGV[2], key, ARGV[3])
+end
+local old = state or ARGV[4]
+redis.call('ZREM', ARGV[1] .. 'jobs:' .. old, ARGV[3])
+redis.call('ZREM', ARGV[1] .. 'jobs:' .. ARGV[2] .. ':' .. old, ARGV[3])
+redis.call('ZREM', KEYS[3], ARGV[3])
+redis.call('ZREM', KEYS[4], ARGV[3])
+if group then
+  release(ARGV[1], ARGV[2], group, ARGV[3])
+end
+return redis.call('DEL', KEYS[1], KEYS[2]) > 0 and 1 or 0
@@ -0,0 +1,59 @@
+-- Move a job from one state to another: its state field, the global and per-type state sets,
+-- the lease of a job leaving ACTIVE and the wake-up sentinel of a job becoming INACTIVE are
+-- written at once, and a job leaving ACTIVE frees its concurrency slot. A job done for good can release its group in the same step, so the next
+-- job of the group never waits on a release that was lost halfway.
+--
+-- KEYS[1] job:{id}               KEYS[2] jobs:ACTIVE:leases
+-- KEYS[3] jobs:{type}:INACTIVE:parked
+-- ARGV[1] key prefix
+-- ARGV[2] job type
+-- ARGV[3] job zid
+-- ARGV[4] old state, or an empty string if the job had none
+-- ARGV[5] new state
+-- ARGV[6] priority score
+-- ARGV[7] promote_at, the score of a DELAYED job in the global set
+-- ARGV[8] group of the job, or an empty string if it has none
+-- ARGV[9] 1 to release the group of the job, 0 to keep its turn
+--
+-- An INACTIVE job of a group is only indexed in jobs:{type}:INACTIVE if it is the head of
+-- its group (see enqueue.lua), and a job parked behind a busy concurrency key stays parked
+-- (see claim.lua).
+--
+-- Returns 1.
+
+--@include lib/free
+--@include lib/release
+
+local old, new, zid = ARGV[4], ARGV[5], ARGV[3]
+if old ~= '' and old ~= new then
+  redis.call('ZREM', ARGV[1] .. 'jobs:' .. old, zid)
+  redis.call('ZREM', ARGV[1] .. 'jobs:' .. ARGV[2] .. ':' .. old, zid)
+  if old == 'ACTIVE' then
+    redis.call('ZREM', KEYS[2], zid)
+    local key = redis.call('HGET', KEYS[1], 'concurrencyKey')
+    if key then
+      free(ARGV[1], ARGV[2], key, zid)
+    end
+  elseif old == 'INACTIVE' then
+    redis.call('ZREM', KEYS[3], zid)
+  end
+end
+redis.call('HSET', KEYS[1], 'state', new)
+local score = ARGV[6]
+if new == 'ACTIVE' then
+  score = -math.abs(tonumber(ARGV[6]))
+elseif new == 'DELAYED' then
+  score = ARGV[7]
+end
+redis.call('ZADD', ARGV[1] .. 'jobs:' .. new, score, zid)
+if new ~= 'INACTIVE' or (not redis.call('ZSCORE', KEYS[3], zid) and (ARGV[8] == ''
+    or redis.call('LINDEX', ARGV[1] .. 'group:' .. ARGV[2] .. ':' .. ARGV[8], 0) == zid)) then
+  redis.call('ZADD', ARGV[1] .. 'jobs:' .. ARGV[2] .. ':' .. new, ARGV[6], zid)
+  if new == 'INACTIVE' then
+    redis.call('LPUSH', ARGV[1] .. ARGV[2] .. ':jobs', 1)
+  end
+end
+if ARGV[8] ~= '' and ARGV[9] == '1' then
+  release(ARGV[1], ARGV[2], ARGV[8], zid)
+end
+return 1
@@ -1,7 +1,12 @@
 package io.vertx.blueprint.kue;
 
+import io.vertx.blueprint.kue.queue.Job;
+import io.vertx.blueprint.kue.queue.JobState;
 import io.vertx.blueprint.kue.queue.KueVerticle;
+import io.vertx.blueprint.kue.util.RedisHelper;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -13,7 +18,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
 @RunWith(VertxUnitRunner.class)
 public class KueJobTest {
@@ -73,6 +82,385 @@ public class KueJobTest {
         });
     }
 
+    @Test
+    public void testGetJobs(TestContext context) {
+        Async async = context.async();
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .save().onComplete(it -> {
+            if (it.succeeded()) {
+                kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                        .save().onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        long first = it.result().getId();
+                        long second = it2.result().getId();
+                        kue.getJobs(Arrays.asList(second, 404L, first)).onComplete(it3 -> {
+                            if (it3.succeeded()) {
+                                context.assertEquals(2, it3.result().size());
+                                context.assertEquals(second, it3.result().get(0).getId());
+                                context.assertEquals(first, it3.result().get(1).getId());
+                                async.complete();
+                            } else {
+                                context.fail(it3.cause());
+                            }
+                        });
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                });
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testSaveAll(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i)));
+        }
+        kue.saveAll(jobs).onComplete(it -> {
+            if (it.succeeded()) {
+                context.assertEquals(3, it.result().size());
+                for (int i = 0; i < 3; i++) {
+                    context.assertEquals(jobs.get(i).getId(), it.result().get(i));
+                }
+                context.assertTrue(it.result().get(0) < it.result().get(1));
+                context.assertTrue(it.result().get(1) < it.result().get(2));
+                kue.inactiveCount(TYPE).onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        context.assertEquals(3L, it2.result());
+                        async.complete();
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                });
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testJobRangeOrder(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i)));
+        }
+        kue.saveAll(jobs).onComplete(it -> {
+            if (it.succeeded()) {
+                kue.jobRange(0, 1, "desc").onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        context.assertEquals(2, it2.result().size());
+                        context.assertEquals(it.result().get(2), it2.result().get(0).getId());
+                        context.assertEquals(it.result().get(1), it2.result().get(1).getId());
+                        async.complete();
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                });
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testJobPage(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i)));
+        }
+        kue.saveAll(jobs).onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+                return;
+            }
+            kue.jobPage(TYPE, "inactive", null, 2, "asc").onComplete(it2 -> {
+                if (it2.failed()) {
+                    context.fail(it2.cause());
+                    return;
+                }
+                context.assertEquals(2, it2.result().getJsonArray("jobs").size());
+                String next = it2.result().getString("next");
+                context.assertNotNull(next);
+                // the cursor job leaving the set does not shift the next page
+                jobs.get(1).remove().compose(v -> kue.jobPage(TYPE, "inactive", next, 2, "asc")).onComplete(it3 -> {
+                    if (it3.succeeded()) {
+                        JsonArray page = it3.result().getJsonArray("jobs");
+                        context.assertEquals(1, page.size());
+                        context.assertEquals(it.result().get(2), Long.valueOf(page.getJsonObject(0).getValue("id").toString()));
+                        context.assertNull(it3.result().getString("next"));
+                        async.complete();
+                    } else {
+                        context.fail(it3.cause());
+                    }
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testGetStatsByType(TestContext context) {
+        Async async = context.async();
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .setDelay(60000)
+                .save().onComplete(it -> {
+            if (it.succeeded()) {
+                kue.getStatsByType().onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        JsonObject counts = it2.result().getJsonObject(TYPE);
+                        context.assertEquals(1L, counts.getLong("delayed"));
+                        context.assertEquals(0L, counts.getLong("inactive"));
+                        async.complete();
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                });
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testPromoteDelayedOnTime(TestContext context) {
+        Async async = context.async();
+        kue.getPromoter().start();
+        // let the promoter load its first window
+        vertx.setTimer(100, l -> kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .setDelay(300)
+                .save().onComplete(it -> {
+            if (it.succeeded()) {
+                // promoted by the wheel within a tick or so, long before the next window refill
+                vertx.setTimer(500, l2 -> kue.getJob(it.result().getId()).onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        context.assertTrue(it2.result().isPresent());
+                        context.assertEquals(JobState.INACTIVE, it2.result().get().getState());
+                        async.complete();
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                }));
+            } else {
+                context.fail(it.cause());
+            }
+        }));
+    }
+
+    @Test
+    public void testPromoteDueJobsInBulk(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i)).setDelay(50));
+        }
+        kue.saveAll(jobs).onComplete(it -> {
+            if (it.succeeded()) {
+                // all the due jobs are promoted by a single script call
+                vertx.setTimer(200, l -> kue.getPromoter().promote()
+                        .compose(ids -> {
+                            context.assertEquals(3, ids.size());
+                            context.assertEquals(new HashSet<>(it.result()), new HashSet<>(ids));
+                            return kue.cardByType(TYPE, JobState.INACTIVE);
+                        })
+                        .onComplete(it2 -> {
+                            if (it2.succeeded()) {
+                                context.assertEquals(3L, it2.result());
+                                async.complete();
+                            } else {
+                                context.fail(it2.cause());
+                            }
+                        }));
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testElectedPromoterIsAlone(TestContext context) {
+        Async async = context.async();
+        JsonObject config = new JsonObject()
+                .put("job.promotion.cluster", true)
+                .put("job.promotion.interval", 100)
+                .put("job.promotion.election.timeout", 100L);
+        Kue kue1 = new Kue(vertx, config, RedisHelper.client(vertx, config));
+        Kue kue2 = new Kue(vertx, config, RedisHelper.client(vertx, config));
+        vertx.setTimer(500, l -> {
+            // exactly one instance holds the lock and runs the promoter
+            context.assertTrue(kue1.isPromoter() ^ kue2.isPromoter());
+            Kue leader = kue1.isPromoter() ? kue1 : kue2;
+            Kue standby = leader == kue1 ? kue2 : kue1;
+            // the leader leaves: its lock is released and the standby takes over
+            leader.setClosed(true);
+            context.assertFalse(leader.isPromoter());
+            vertx.setTimer(500, l2 -> {
+                context.assertTrue(standby.isPromoter());
+                standby.setClosed(true);
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testReapExpiredLease(TestContext context) {
+        Async async = context.async();
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .setTtl(200)
+                .setMax_attempts(2)
+                .save().onComplete(it -> {
+            if (it.succeeded()) {
+                // taken but never renewed nor completed, like a job of a crashed worker
+                kue.getDispatcher().take(TYPE).onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        vertx.setTimer(400, l -> kue.getLeases().reap().onComplete(it3 -> {
+                            if (it3.succeeded()) {
+                                context.assertEquals(1, it3.result().size());
+                                context.assertEquals(it.result().getId(), it3.result().get(0).getId());
+                                context.assertEquals(JobState.INACTIVE, it3.result().get(0).getState());
+                                async.complete();
+                            } else {
+                                context.fail(it3.cause());
+                            }
+                        }));
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                });
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testCompleteFencedAfterReap(TestContext context) {
+        Async async = context.async();
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .setTtl(200)
+                .setMax_attempts(2)
+                .save().onComplete(it -> {
+            if (it.succeeded()) {
+                kue.getDispatcher().take(TYPE).onComplete(it2 -> {
+                    if (it2.succeeded()) {
+                        // the worker is too slow: its lease expires and the job goes back to the queue
+                        vertx.setTimer(400, l -> kue.getLeases().reap()
+                                .compose(jobs -> it2.result().complete())
+                                .onComplete(it3 -> {
+                                    context.assertTrue(it3.failed());
+                                    context.assertTrue(it3.cause() instanceof IllegalStateException);
+                                    kue.getJob(it.result().getId()).onComplete(it4 -> {
+                                        if (it4.succeeded()) {
+                                            context.assertEquals(JobState.INACTIVE, it4.result().get().getState());
+                                            async.complete();
+                                        } else {
+                                            context.fail(it4.cause());
+                                        }
+                                    });
+                                }));
+                    } else {
+                        context.fail(it2.cause());
+                    }
+                });
+            } else {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test
+    public void testGroupReleasedWithFailure(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i))
+                    .setGroup("alice"));
+        }
+        kue.saveAll(jobs)
+                .compose(ids -> kue.getDispatcher().take(TYPE))
+                .compose(job -> {
+                    context.assertEquals(jobs.get(0).getId(), job.getId());
+                    // the worker dies right after failing the job: nothing else runs for the group
+                    return job.failed();
+                })
+                .compose(j -> kue.getDispatcher().take(TYPE))
+                .onComplete(it -> {
+                    if (it.succeeded()) {
+                        context.assertEquals(jobs.get(1).getId(), it.result().getId());
+                        async.complete();
+                    } else {
+                        context.fail(it.cause());
+                    }
+                });
+    }
+
+    @Test
+    public void testRemoveFreesConcurrencySlot(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i))
+                    .setConcurrencyKey("alice"));
+        }
+        kue.limitConcurrency(TYPE, 0, 1)
+                .compose(v -> kue.saveAll(jobs))
+                .compose(ids -> kue.getDispatcher().take(TYPE))
+                .compose(job -> {
+                    context.assertEquals(jobs.get(0).getId(), job.getId());
+                    // the second job is parked until the slot of the key is freed
+                    return kue.removeJob(job.getId());
+                })
+                .compose(v -> kue.getDispatcher().take(TYPE))
+                .onComplete(it -> {
+                    if (it.succeeded()) {
+                        context.assertEquals(jobs.get(1).getId(), it.result().getId());
+                        async.complete();
+                    } else {
+                        context.fail(it.cause());
+                    }
+                });
+    }
+
+    @Test
+    public void testLimitChangeUnparksJobs(TestContext context) {
+        Async async = context.async();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data" + i))
+                    .setConcurrencyKey("alice"));
+        }
+        kue.limitConcurrency(TYPE, 0, 1)
+                .compose(v -> kue.saveAll(jobs))
+                .compose(ids -> kue.getDispatcher().take(TYPE))
+                .onComplete(it -> {
+                    if (it.failed()) {
+                        context.fail(it.cause());
+                        return;
+                    }
+                    // the second job is parked when claimed, as the first one holds the slot of the key
+                    Future<Job> next = kue.getDispatcher().take(TYPE);
+                    vertx.setTimer(200, l -> kue.inactiveCount(TYPE)
+                            .compose(count -> {
+                                // the parked job still counts as inactive for its type
+                                context.assertEquals(1L, count);
+                                return kue.limitConcurrency(TYPE, 0, 0);
+                            })
+                            .compose(v -> next)
+                            .onComplete(it2 -> {
+                                if (it2.succeeded()) {
+                                    context.assertEquals(jobs.get(1).getId(), it2.result().getId());
+                                    async.complete();
+                                } else {
+                                    context.fail(it2.cause());
+                                }
+                            }));
+                });
+    }
+
     @Test
     public void testGetJobLog(TestContext context) {
         Async async = context.async();
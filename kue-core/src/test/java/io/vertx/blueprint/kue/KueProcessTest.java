@@ -4,6 +4,8 @@ import io.vertx.blueprint.kue.queue.Job;
 import io.vertx.blueprint.kue.queue.JobState;
 import io.vertx.blueprint.kue.queue.KueVerticle;
 import io.vertx.blueprint.kue.queue.Priority;
+import io.vertx.blueprint.kue.queue.RecurringJob;
+import io.vertx.blueprint.kue.util.RedisHelper;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
@@ -18,7 +20,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @RunWith(VertxUnitRunner.class)
 public class KueProcessTest {
@@ -219,6 +227,60 @@ public class KueProcessTest {
 //        });
 //    }
 
+    @Test(timeout = 2500)
+    public void testProcessConcurrently(TestContext context) {
+        Async async = context.async(2);
+        List<Job> received = new ArrayList<>();
+        kue.process(TYPE, 2, job -> {
+            // hold every job until both are in flight in the same worker
+            context.assertEquals(JobState.ACTIVE, job.getState());
+            received.add(job);
+            if (received.size() == 2) {
+                received.forEach(it -> {
+                    it.onComplete(r -> async.countDown());
+                    it.done();
+                });
+            }
+        });
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .save().onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+            } else {
+                kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                        .save().onComplete(it2 -> {
+                    if (it2.failed()) {
+                        context.fail(it2.cause());
+                    }
+                });
+            }
+        });
+    }
+
+    @Test(timeout = 2500)
+    public void testProcessRemoveOnComplete(TestContext context) {
+        Async async = context.async();
+        kue.process(TYPE, job -> {
+            context.assertTrue(job.isRemoveOnComplete());
+            job.onComplete(it -> kue.existsJob(job.getId()).onComplete(r -> {
+                if (r.succeeded()) {
+                    context.assertFalse(r.result());
+                    async.complete();
+                } else {
+                    context.fail(r.cause());
+                }
+            }));
+            job.done();
+        });
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .setRemoveOnComplete(true)
+                .save().onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+            }
+        });
+    }
+
     @Test(timeout = 7500)
     public void testProcessBlockingCreateJob(TestContext context) {
         Handler<AsyncResult<Job>> assertSuccess = context.asyncAssertSuccess();
@@ -241,6 +303,233 @@ public class KueProcessTest {
         });
     }
 
+    @Test(timeout = 5000)
+    public void testProcessAdaptive(TestContext context) {
+        Async async = context.async(3);
+        kue.processAdaptive(TYPE, 1, 4, job -> {
+            context.assertEquals(JobState.ACTIVE, job.getState());
+            job.onComplete(it -> async.countDown());
+            job.done();
+        });
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data")));
+        }
+        kue.saveAll(jobs).onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test(timeout = 2500)
+    public void testProcessWorkStats(TestContext context) {
+        Async async = context.async();
+        Handler<Job> handler = job -> {
+            job.onComplete(it -> kue.getWorkStats().flush().onComplete(r -> {
+                if (r.failed()) {
+                    context.fail(r.cause());
+                    return;
+                }
+                kue.getRedisAPI().hget(RedisHelper.getKey("stats:" + TYPE), "complete", r2 -> {
+                    if (r2.succeeded()) {
+                        context.assertEquals(1, r2.result().toInteger());
+                        async.complete();
+                    } else {
+                        context.fail(r2.cause());
+                    }
+                });
+            }));
+            job.done();
+        };
+        // counted once, however many workers are deployed
+        kue.process(TYPE, 2, handler);
+        kue.process(TYPE, 2, handler);
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .save().onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessRateLimited(TestContext context) {
+        Async async = context.async(3);
+        long start = System.currentTimeMillis();
+        List<Long> started = new ArrayList<>();
+        kue.rateLimit(TYPE, 2, 1).onComplete(r -> {
+            if (r.failed()) {
+                context.fail(r.cause());
+                return;
+            }
+            kue.process(TYPE, 3, job -> {
+                started.add(System.currentTimeMillis() - start);
+                if (started.size() == 3) { // one job at once, then one every 500 ms
+                    context.assertTrue(started.get(2) >= 900);
+                }
+                job.onComplete(it -> async.countDown());
+                job.done();
+            });
+            List<Job> jobs = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data")));
+            }
+            kue.saveAll(jobs).onComplete(it -> {
+                if (it.failed()) {
+                    context.fail(it.cause());
+                }
+            });
+        });
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessGroupInOrder(TestContext context) {
+        Async async = context.async(4);
+        List<Long> order = new ArrayList<>();
+        int[] inFlight = {0};
+        kue.process(TYPE, 4, job -> {
+            if ("a".equals(job.getGroup())) {
+                // one job of the group at once, in the order they were saved
+                context.assertEquals(0, inFlight[0]);
+                context.assertTrue(order.isEmpty() || order.get(order.size() - 1) < job.getId());
+                inFlight[0]++;
+                order.add(job.getId());
+            }
+            job.onComplete(it -> async.countDown());
+            vertx.setTimer(100, l -> {
+                if ("a".equals(job.getGroup())) {
+                    inFlight[0]--;
+                }
+                job.done();
+            });
+        });
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data")).setGroup("a"));
+        }
+        jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data")).setGroup("b"));
+        kue.saveAll(jobs).onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+            }
+        });
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessGroupSkipsFailed(TestContext context) {
+        Async async = context.async(2);
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data")).setGroup("a"));
+        }
+        // the second job of the group is failed by hand while waiting for its turn
+        kue.saveAll(jobs).compose(ids -> jobs.get(1).failed()).onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+                return;
+            }
+            List<Long> processed = new ArrayList<>();
+            kue.process(TYPE, 2, job -> {
+                processed.add(job.getId());
+                if (processed.size() == 2) {
+                    context.assertEquals(Arrays.asList(jobs.get(0).getId(), jobs.get(2).getId()), processed);
+                }
+                job.onComplete(r -> async.countDown());
+                job.done();
+            });
+        });
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessConcurrencyLimited(TestContext context) {
+        Async async = context.async(4);
+        Map<String, Integer> inFlight = new HashMap<>();
+        kue.limitConcurrency(TYPE, 3, 1).onComplete(r -> {
+            if (r.failed()) {
+                context.fail(r.cause());
+                return;
+            }
+            kue.process(TYPE, 4, job -> {
+                // at most one job per user, though the worker has room for all of them
+                int n = inFlight.merge(job.getConcurrencyKey(), 1, Integer::sum);
+                context.assertEquals(1, n);
+                job.onComplete(it -> async.countDown());
+                vertx.setTimer(100, l -> {
+                    inFlight.merge(job.getConcurrencyKey(), -1, Integer::sum);
+                    job.done();
+                });
+            });
+            List<Job> jobs = new ArrayList<>();
+            for (String user : Arrays.asList("alice", "alice", "bob", "bob")) {
+                jobs.add(kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                        .setConcurrencyKey(user));
+            }
+            kue.saveAll(jobs).onComplete(it -> {
+                if (it.failed()) {
+                    context.fail(it.cause());
+                }
+            });
+        });
+    }
+
+    @Test(timeout = 2500)
+    public void testProcessWeighted(TestContext context) {
+        Async async = context.async(2);
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put(TYPE, 3);
+        weights.put(TYPE_DELAYED, 1);
+        kue.processWeighted(weights, 2, job -> {
+            context.assertTrue(weights.containsKey(job.getType()));
+            job.onComplete(it -> async.countDown());
+            job.done();
+        });
+        kue.saveAll(Arrays.asList(
+                kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data")),
+                kue.createJob(TYPE_DELAYED, new JsonObject().put("data", TYPE_DELAYED + ":data"))))
+                .onComplete(it -> {
+                    if (it.failed()) {
+                        context.fail(it.cause());
+                    }
+                });
+    }
+
+    @Test(timeout = 5000)
+    public void testProcessRecurringJob(TestContext context) {
+        Async async = context.async(2);
+        kue.process(TYPE, job -> {
+            context.assertEquals(new JsonObject().put("data", TYPE + ":recurring"), job.getData());
+            job.done();
+            if (async.count() > 0) {
+                async.countDown();
+            }
+        });
+        kue.schedule(RecurringJob.every("test:recurring", TYPE, 500)
+                .setData(new JsonObject().put("data", TYPE + ":recurring")));
+    }
+
+    @Test(timeout = 2500)
+    public void testProcessVirtualCreateJob(TestContext context) {
+        Async async = context.async();
+        kue.processVirtual(TYPE, 2, job -> {
+            context.assertEquals(JobState.ACTIVE, job.getState());
+            context.assertEquals(new JsonObject().put("data", TYPE + ":data"), job.getData());
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            job.onComplete(it -> async.complete());
+            job.done();
+        });
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .save().onComplete(it -> {
+            if (it.failed()) {
+                context.fail(it.cause());
+            }
+        });
+    }
+
     @Test(timeout = 2500)
     public void testRestartJob(TestContext context) {
         Handler<AsyncResult<Job>> assertSuccess = context.asyncAssertSuccess();
@@ -0,0 +1,42 @@
+package io.vertx.blueprint.kue.queue;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveConcurrencyTest {
+
+    @Test
+    public void testGrowWithLongRunningJobs() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(1, 4, new JsonObject());
+        adaptive.inFlight(1);
+        // the job outlives several windows without any job being taken meanwhile
+        assertEquals(2, adaptive.adjust(10, 1));
+        adaptive.inFlight(2);
+        assertEquals(3, adaptive.adjust(10, 2));
+        assertEquals(3, adaptive.adjust(10, 2)); // one slot was unused
+        assertEquals(3, adaptive.adjust(0, 3)); // all slots busy, nothing waiting
+    }
+
+    @Test
+    public void testShrinkWhenIdle() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(1, 4, new JsonObject());
+        adaptive.inFlight(1);
+        assertEquals(2, adaptive.adjust(10, 1));
+        assertEquals(1, adaptive.adjust(0, 0));
+        assertEquals(1, adaptive.adjust(0, 0)); // not below min
+    }
+
+    @Test
+    public void testBackOffOnErrors() {
+        AdaptiveConcurrency adaptive = new AdaptiveConcurrency(1, 8, new JsonObject());
+        for (int i = 0; i < 4; i++) {
+            adaptive.adjust(10, adaptive.getLimit());
+        }
+        assertEquals(5, adaptive.getLimit());
+        adaptive.record(10, false);
+        adaptive.record(10, true);
+        assertEquals(3, adaptive.adjust(10, 5));
+    }
+}
@@ -0,0 +1,152 @@
+package io.vertx.blueprint.kue.util;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+
+public class CronExpressionTest {
+
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private static long at(ZoneId zone, String time) {
+        return LocalDateTime.parse(time).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static String next(String expression, String after) {
+        return next(expression, UTC, after);
+    }
+
+    private static String next(String expression, ZoneId zone, String after) {
+        long next = new CronExpression(expression, zone).next(at(zone, after));
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(next), zone).toLocalDateTime().toString();
+    }
+
+    @Test
+    public void testEveryMinute() {
+        assertEquals("2024-03-05T10:16", next("* * * * *", "2024-03-05T10:15"));
+        // strictly after, from the next whole minute
+        assertEquals("2024-03-05T10:16", next("* * * * *", "2024-03-05T10:15:59"));
+    }
+
+    @Test
+    public void testValuesAndRanges() {
+        assertEquals("2024-03-05T12:30", next("30 12 * * *", "2024-03-05T10:15"));
+        assertEquals("2024-03-06T12:30", next("30 12 * * *", "2024-03-05T12:30"));
+        assertEquals("2024-03-05T10:20", next("20-25 * * * *", "2024-03-05T10:15"));
+        assertEquals("2024-03-05T11:20", next("20-25 * * * *", "2024-03-05T10:25"));
+        assertEquals("2024-03-06T09:00", next("0 9-17 * * *", "2024-03-05T17:00"));
+    }
+
+    @Test
+    public void testSteps() {
+        assertEquals("2024-03-05T10:30", next("*/15 * * * *", "2024-03-05T10:15"));
+        assertEquals("2024-03-05T11:00", next("*/15 * * * *", "2024-03-05T10:45"));
+        assertEquals("2024-03-05T10:25", next("5-30/10 * * * *", "2024-03-05T10:15"));
+        assertEquals("2024-03-05T11:05", next("5-30/10 * * * *", "2024-03-05T10:25"));
+        // a single value with a step runs up to the end of the field range
+        assertEquals("2024-03-05T10:50", next("50/5 * * * *", "2024-03-05T10:15"));
+        assertEquals("2024-03-05T10:55", next("50/5 * * * *", "2024-03-05T10:50"));
+    }
+
+    @Test
+    public void testLists() {
+        assertEquals("2024-03-05T10:40", next("0,40 * * * *", "2024-03-05T10:15"));
+        assertEquals("2024-03-05T11:00", next("0,40 * * * *", "2024-03-05T10:40"));
+        assertEquals("2024-03-05T10:20", next("1-3,20,*/30 * * * *", "2024-03-05T10:03"));
+    }
+
+    @Test
+    public void testDayOfWeek() {
+        // 2024-03-05 is a Tuesday
+        assertEquals("2024-03-10T00:00", next("0 0 * * 0", "2024-03-05T10:15"));
+        assertEquals("2024-03-10T00:00", next("0 0 * * 7", "2024-03-05T10:15"));
+        assertEquals("2024-03-08T00:00", next("0 0 * * 5", "2024-03-05T10:15"));
+        assertEquals("2024-03-06T00:00", next("0 0 * * 1-5", "2024-03-05T10:15"));
+        assertEquals("2024-03-11T00:00", next("0 0 * * 1-5", "2024-03-08T10:15"));
+    }
+
+    @Test
+    public void testDayOfMonthOrDayOfWeek() {
+        // both restricted: either matches
+        assertEquals("2024-03-08T00:00", next("0 0 13 * 5", "2024-03-05T10:15"));
+        assertEquals("2024-03-13T00:00", next("0 0 13 * 5", "2024-03-08T10:15"));
+        // only day of month restricted
+        assertEquals("2024-03-13T00:00", next("0 0 13 * *", "2024-03-05T10:15"));
+        // only day of week restricted
+        assertEquals("2024-03-08T00:00", next("0 0 * * 5", "2024-03-05T10:15"));
+        // a step is a restriction too: every other day of month or any Friday
+        assertEquals("2024-03-07T00:00", next("0 0 */2 * 5", "2024-03-05T10:15"));
+        assertEquals("2024-03-08T00:00", next("0 0 */2 * 5", "2024-03-07T10:15"));
+        assertEquals("2024-03-09T00:00", next("0 0 */2 * 5", "2024-03-08T10:15"));
+    }
+
+    @Test
+    public void testMonthAndYearRollover() {
+        assertEquals("2024-04-01T00:00", next("0 0 1 * *", "2024-03-05T10:15"));
+        assertEquals("2025-01-01T00:00", next("0 0 1 1 *", "2024-03-05T10:15"));
+        assertEquals("2025-01-01T00:00", next("* * * * *", "2024-12-31T23:59"));
+        assertEquals("2024-06-30T00:00", next("0 0 30 4,6 *", "2024-04-30T10:15"));
+        // leap day
+        assertEquals("2028-02-29T00:00", next("0 0 29 2 *", "2024-03-05T10:15"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNeverMatches() {
+        new CronExpression("0 0 30 2 *", UTC).next(at(UTC, "2024-03-05T10:15"));
+    }
+
+    @Test
+    public void testDaylightSavingGap() {
+        // 2024-03-10 02:00 does not exist in New York: the clocks go from 01:59 to 03:00
+        assertEquals("2024-03-11T02:30", next("30 2 * * *", NEW_YORK, "2024-03-10T00:00"));
+        assertEquals("2024-03-10T03:00", next("0 * * * *", NEW_YORK, "2024-03-10T01:30"));
+    }
+
+    @Test
+    public void testDaylightSavingOverlap() {
+        // 2024-11-03 01:00 to 01:59 happens twice in New York; it only matches once
+        long first = new CronExpression("30 1 * * *", NEW_YORK).next(at(NEW_YORK, "2024-11-03T00:00"));
+        assertEquals(ZonedDateTime.of(2024, 11, 3, 1, 30, 0, 0, NEW_YORK).withEarlierOffsetAtOverlap()
+                .toInstant().toEpochMilli(), first);
+        assertEquals("2024-11-04T01:30", next("30 1 * * *", NEW_YORK, "2024-11-03T01:30"));
+        long second = new CronExpression("30 1 * * *", NEW_YORK).next(first);
+        assertEquals(at(NEW_YORK, "2024-11-04T01:30"), second);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongFieldCount() {
+        new CronExpression("0 0 * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutOfRange() {
+        new CronExpression("60 * * * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDayOfMonthZero() {
+        new CronExpression("0 0 0 * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMonthOutOfRange() {
+        new CronExpression("0 0 * 13 *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReversedRange() {
+        new CronExpression("0 5-1 * * *");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroStep() {
+        new CronExpression("*/0 * * * *");
+    }
+}
@@ -0,0 +1,91 @@
+package io.vertx.blueprint.kue.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testAddAndAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        assertTrue(wheel.add(1005, "a"));
+        assertTrue(wheel.add(1030, "b"));
+        assertEquals(2, wheel.size());
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(1009, fired::add);
+        assertTrue(fired.isEmpty()); // the first tick is not over yet
+        wheel.advance(1010, fired::add);
+        assertEquals(Arrays.asList("a"), fired);
+        wheel.advance(1039, fired::add);
+        assertEquals(Arrays.asList("a"), fired);
+        wheel.advance(1040, fired::add);
+        assertEquals(Arrays.asList("a", "b"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testPastDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1000);
+        assertFalse(wheel.add(999, "late"));
+        assertTrue(wheel.add(1000, "now")); // within the current tick
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void testCascade() {
+        // the first level covers 80 ms, the second one 640 ms, the third one 5120 ms
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 0);
+        List<Long> deadlines = Arrays.asList(75L, 85L, 300L, 639L, 640L, 2000L, 5000L);
+        for (long deadline : deadlines) {
+            assertTrue(wheel.add(deadline, deadline));
+        }
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 6000; now += 10) {
+            long tickEnd = now;
+            wheel.advance(now, deadline -> {
+                // fired once the deadline is reached, at most one tick late
+                assertTrue(deadline < tickEnd);
+                assertTrue(tickEnd - deadline <= 10);
+                fired.add(deadline);
+            });
+        }
+        assertEquals(deadlines, fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testAdvanceJump() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.add(50L, 50L);
+        wheel.add(700L, 700L);
+        wheel.add(3000L, 3000L);
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(1000, fired::add);
+        assertEquals(Arrays.asList(50L, 700L), fired);
+        wheel.advance(10000, fired::add);
+        assertEquals(Arrays.asList(50L, 700L, 3000L), fired);
+    }
+
+    @Test
+    public void testAddAfterIdle() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.advance(100000, v -> fail("Nothing to fire"));
+        assertFalse(wheel.add(99990, "past"));
+        assertTrue(wheel.add(100005, "a"));
+        assertTrue(wheel.add(100500, "b"));
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(100010, fired::add);
+        assertEquals(Arrays.asList("a"), fired);
+        wheel.advance(100510, fired::add);
+        assertEquals(Arrays.asList("a", "b"), fired);
+    }
+}
@@ -3,6 +3,7 @@ package io.vertx.blueprint.kue.example;
 import io.vertx.blueprint.kue.Kue;
 import io.vertx.blueprint.kue.queue.Job;
 import io.vertx.blueprint.kue.queue.Priority;
+import io.vertx.blueprint.kue.queue.RecurringJob;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.json.JsonObject;
 
@@ -31,6 +32,14 @@ public class DelayedEmailVerticle extends AbstractVerticle {
                 .priority(Priority.HIGH)
                 .onComplete(j -> System.out.println("renewal job completed"));
 
+        // send a digest email every monday at 9:00, without re-enqueueing it ourselves
+        kue.schedule(RecurringJob.cron("weekly-digest", "email", "0 9 * * 1")
+                .setData(new JsonObject()
+                        .put("title", "Weekly digest")
+                        .put("to", "qinxin@jianpo.xyz")
+                        .put("template", "digest-email"))
+                .setMissedRunPolicy(RecurringJob.MissedRunPolicy.RUN_ONCE));
+
         kue.createJob("email", new JsonObject().put("title", "Account expired")
                 .put("to", "qinxin@jianpo.xyz")
                 .put("template", "expired-email"))
@@ -31,6 +31,8 @@ public class KueHttpVerticle extends AbstractVerticle {
     private static final String KUE_API_JOB_SEARCH = "/job/search/:q";
     private static final String KUE_API_STATS = "/stats";
     private static final String KUE_API_TYPE_STATE_STATS = "/jobs/:type/:state/stats";
+    private static final String KUE_API_TYPE_STATS = "/jobs/stats";
+    private static final String KUE_API_JOB_PAGE = "/jobs/page"; // ?type=&state=&cursor=&count=&order=
     private static final String KUE_API_GET_JOB = "/job/:id";
     private static final String KUE_API_GET_JOB_TYPES = "/job/types";
     private static final String KUE_API_JOB_RANGE = "/jobs/:from/to/:to";
@@ -66,6 +68,8 @@ public class KueHttpVerticle extends AbstractVerticle {
         router.get(KUE_API_JOB_SEARCH).handler(this::apiSearchJob);
         router.get(KUE_API_STATS).handler(this::apiStats);
         router.get(KUE_API_TYPE_STATE_STATS).handler(this::apiTypeStateStats);
+        router.get(KUE_API_TYPE_STATS).handler(this::apiTypeStats);
+        router.get(KUE_API_JOB_PAGE).handler(this::apiJobPage);
         router.get(KUE_API_GET_JOB_TYPES).handler(this::apiJobTypes);
         router.get(KUE_API_JOB_RANGE).handler(this::apiJobRange); // \/jobs\/([0-9]*)\.\.([0-9]*)(\/[^\/]+)?
         router.get(KUE_API_JOB_TYPE_RANGE).handler(this::apiJobTypeRange);
@@ -156,26 +160,7 @@ public class KueHttpVerticle extends AbstractVerticle {
     }
 
     private void apiStats(RoutingContext context) {
-        JsonObject stats = new JsonObject();
-        kue.getWorkTime().compose(r -> {
-            stats.put("workTime", r);
-            return kue.getIdsByState(JobState.INACTIVE);
-        }).compose(r -> {
-            stats.put("inactiveCount", r.size());
-            return kue.getIdsByState(JobState.COMPLETE);
-        }).compose(r -> {
-            stats.put("completeCount", r.size());
-            return kue.getIdsByState(JobState.ACTIVE);
-        }).compose(r -> {
-            stats.put("activeCount", r.size());
-            return kue.getIdsByState(JobState.FAILED);
-        }).compose(r -> {
-            stats.put("failedCount", r.size());
-            return kue.getIdsByState(JobState.DELAYED);
-        }).map(r -> {
-            stats.put("delayedCount", r.size());
-            return stats;
-        }).onComplete(resultHandler(context, r -> {
+        kue.getStats().onComplete(resultHandler(context, r -> {
             context.response()
                     .putHeader("content-type", "application/json")
                     .end(r.encodePrettily());
@@ -196,6 +181,14 @@ public class KueHttpVerticle extends AbstractVerticle {
         }
     }
 
+    private void apiTypeStats(RoutingContext context) {
+        kue.getStatsByType().onComplete(resultHandler(context, r -> {
+            context.response()
+                    .putHeader("content-type", "application/json")
+                    .end(r.encodePrettily());
+        }));
+    }
+
     private void apiJobTypes(RoutingContext context) {
         kue.getAllTypes().onComplete(resultHandler(context, r -> {
             context.response()
@@ -307,6 +300,44 @@ public class KueHttpVerticle extends AbstractVerticle {
         }
     }
 
+    private void apiJobPage(RoutingContext context) {
+        try {
+            String order = context.request().getParam("order");
+            if (order == null || !isOrderValid(order))
+                order = "asc";
+            String type = context.request().getParam("type");
+            String state = context.request().getParam("state");
+            String cursor = context.request().getParam("cursor");
+            String countParam = context.request().getParam("count");
+            int count = countParam == null ? 20 : Integer.parseInt(countParam);
+            if (count <= 0) {
+                throw new IllegalArgumentException("The page size must be positive");
+            }
+            if (state != null) {
+                JobState.valueOf(state.toUpperCase());
+            } else if (type != null) {
+                throw new IllegalArgumentException("A job state is required to page jobs of a type");
+            }
+            if (cursor != null) { // score:id of the last job of the previous page
+                int i = cursor.lastIndexOf(':');
+                if (i < 0) {
+                    throw new IllegalArgumentException("Invalid cursor: " + cursor);
+                }
+                Double.parseDouble(cursor.substring(0, i));
+                Long.parseLong(cursor.substring(i + 1));
+            }
+            kue.jobPage(type, state, cursor, count, order)
+                    .onComplete(resultHandler(context, r -> {
+                        context.response()
+                                .putHeader("content-type", "application/json")
+                                .end(r.encodePrettily());
+                    }));
+        } catch (Exception e) {
+            e.printStackTrace();
+            badRequest(context, e);
+        }
+    }
+
     private void apiJobStateRange(RoutingContext context) {
         try {
             String order = context.request().getParam("order");
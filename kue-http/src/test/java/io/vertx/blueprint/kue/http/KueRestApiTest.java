@@ -7,6 +7,7 @@ import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.core.http.HttpClient;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
@@ -17,6 +18,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Vert.x Kue REST API test case
  *
@@ -85,6 +91,106 @@ public class KueRestApiTest {
         });
     }
 
+    @Test
+    public void testApiTypeStats(TestContext context) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        HttpClient client = vertx.createHttpClient();
+        Async async = context.async();
+        kue.createJob(TYPE, new JsonObject().put("data", TYPE + ":data"))
+                .save()
+                .onComplete(jr -> {
+                    if (jr.succeeded()) {
+                        client.request(HttpMethod.GET, PORT, HOST, "/jobs/stats", it -> {
+                            context.assertTrue(it.succeeded());
+                            it.result().send(rsp -> {
+                                context.assertTrue(rsp.succeeded());
+                                context.assertEquals(200, rsp.result().statusCode());
+                                rsp.result().bodyHandler(body -> {
+                                    JsonObject counts = new JsonObject(body.toString()).getJsonObject(TYPE);
+                                    context.assertTrue(counts.getLong("inactive") > 0);
+                                    context.assertNotNull(counts.getLong("complete"));
+                                    client.close();
+                                    async.complete();
+                                });
+                            });
+                        });
+                    } else {
+                        context.fail(jr.cause());
+                    }
+                });
+    }
+
+    @Test
+    public void testApiJobPage(TestContext context) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        HttpClient client = vertx.createHttpClient();
+        Async async = context.async();
+        String type = TYPE + ":page:" + System.currentTimeMillis(); // not shared with other runs
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            jobs.add(kue.createJob(type, new JsonObject().put("data", type + ":data" + i)));
+        }
+        String uri = "/jobs/page?type=" + type + "&state=inactive&count=2";
+        kue.saveAll(jobs).onComplete(jr -> {
+            if (jr.failed()) {
+                context.fail(jr.cause());
+                return;
+            }
+            client.request(HttpMethod.GET, PORT, HOST, uri, it -> {
+                context.assertTrue(it.succeeded());
+                it.result().send(rsp -> {
+                    context.assertTrue(rsp.succeeded());
+                    rsp.result().bodyHandler(body -> {
+                        JsonObject page = new JsonObject(body.toString());
+                        JsonArray first = page.getJsonArray("jobs");
+                        context.assertEquals(2, first.size());
+                        context.assertEquals(jobs.get(0).getId(), new Job(first.getJsonObject(0)).getId());
+                        context.assertEquals(jobs.get(1).getId(), new Job(first.getJsonObject(1)).getId());
+                        context.assertNotNull(page.getString("next"));
+                        String next;
+                        try {
+                            next = URLEncoder.encode(page.getString("next"), "UTF-8");
+                        } catch (UnsupportedEncodingException e) {
+                            context.fail(e);
+                            return;
+                        }
+                        client.request(HttpMethod.GET, PORT, HOST, uri + "&cursor=" + next, it2 -> {
+                            context.assertTrue(it2.succeeded());
+                            it2.result().send(rsp2 -> {
+                                context.assertTrue(rsp2.succeeded());
+                                rsp2.result().bodyHandler(body2 -> {
+                                    JsonObject page2 = new JsonObject(body2.toString());
+                                    context.assertEquals(1, page2.getJsonArray("jobs").size());
+                                    context.assertEquals(jobs.get(2).getId(),
+                                            new Job(page2.getJsonArray("jobs").getJsonObject(0)).getId());
+                                    context.assertNull(page2.getString("next"));
+                                    client.close();
+                                    async.complete();
+                                });
+                            });
+                        });
+                    });
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testApiJobPageBadRequest(TestContext context) throws Exception {
+        Vertx vertx = Vertx.vertx();
+        HttpClient client = vertx.createHttpClient();
+        Async async = context.async();
+        client.request(HttpMethod.GET, PORT, HOST, "/jobs/page?state=inactive&cursor=oops", it -> {
+            context.assertTrue(it.succeeded());
+            it.result().send(rsp -> {
+                context.assertTrue(rsp.succeeded());
+                context.assertEquals(400, rsp.result().statusCode());
+                client.close();
+                async.complete();
+            });
+        });
+    }
+
     public void testApiTypeStateStats(TestContext context) throws Exception {
         Vertx vertx = Vertx.vertx();
         HttpClient client = vertx.createHttpClient();